@@ -26,13 +26,20 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 
@@ -40,6 +47,7 @@ import org.apache.maven.ArtifactFilterManager;
 import org.apache.maven.MavenExecutionException;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.InvalidRepositoryException;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolutionException;
 import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
@@ -58,6 +66,7 @@ import org.apache.maven.lifecycle.LifecycleExecutionException;
 import org.apache.maven.lifecycle.internal.DependencyContext;
 import org.apache.maven.lifecycle.internal.MojoExecutor;
 import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
 import org.apache.maven.plugin.LegacySupport;
 import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.descriptor.MojoDescriptor;
@@ -66,7 +75,7 @@ import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.ProjectBuildingRequest;
-import org.apache.maven.project.ProjectBuildingResult;
+import org.apache.maven.project.ProjectBuildingHelper;
 import org.apache.maven.project.ProjectSorter;
 import org.apache.maven.repository.RepositorySystem;
 import org.codehaus.plexus.DefaultPlexusContainer;
@@ -74,17 +83,40 @@ import org.codehaus.plexus.classworlds.ClassWorld;
 import org.codehaus.plexus.classworlds.ClassWorldListener;
 import org.codehaus.plexus.classworlds.realm.ClassRealm;
 import org.codehaus.plexus.classworlds.realm.DuplicateRealmException;
-import org.codehaus.plexus.classworlds.realm.NoSuchRealmException;
+import org.codehaus.plexus.component.repository.ComponentDescriptor;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.logging.Logger;
 import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.repository.WorkspaceReader;
 import org.eclipse.aether.util.repository.ChainedWorkspaceReader;
+import org.sourcepit.maven.bootstrap.internal.core.ArtifactResolutionMemo;
+import org.sourcepit.maven.bootstrap.internal.core.BootProjectBuilder;
+import org.sourcepit.maven.bootstrap.internal.core.BootSessionCoordinator;
+import org.sourcepit.maven.bootstrap.internal.core.BootstrapThreadFactory;
+import org.sourcepit.maven.bootstrap.internal.core.ClasspathLockFile;
+import org.sourcepit.maven.bootstrap.internal.core.ClasspathLockFile.LockedArtifact;
+import org.sourcepit.maven.bootstrap.internal.core.ComponentIndex;
 import org.sourcepit.maven.bootstrap.internal.core.ExtensionDescriptor;
-import org.sourcepit.maven.bootstrap.internal.core.ExtensionDescriptorReader;
+import org.sourcepit.maven.bootstrap.internal.core.ExtensionDescriptorCache;
+import org.sourcepit.maven.bootstrap.internal.core.ExtensionRealmPool;
+import org.sourcepit.maven.bootstrap.internal.core.PendingShutdowns;
 import org.sourcepit.maven.bootstrap.internal.core.PluginConfigurationReader;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectDescriptorFilter;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectDescriptorIndex;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectDescriptorPipeline;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectDescriptorScanner;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectGraphExecutor;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectModelCache;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectReferences;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectSelector;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectSharing;
 import org.sourcepit.maven.bootstrap.internal.core.ReactorReader;
+import org.sourcepit.maven.bootstrap.internal.core.WorkspaceIndex;
 import org.sourcepit.maven.bootstrap.participation.BootstrapParticipant;
 import org.sourcepit.maven.bootstrap.participation.BootstrapParticipant2;
+import org.sourcepit.maven.bootstrap.participation.ConcurrentBeforeBuildBootstrapParticipant;
+import org.sourcepit.maven.bootstrap.participation.DependencyResolutionAwareBootstrapParticipant;
+import org.sourcepit.maven.bootstrap.participation.ThreadSafeBootstrapParticipant;
 import org.sourcepit.maven.exec.intercept.MavenExecutionParticipant;
 
 public abstract class AbstractBootstrapper implements MavenExecutionParticipant {
@@ -100,6 +132,9 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
    @Inject
    private ProjectBuilder projectBuilder;
 
+   @Inject
+   private ProjectBuildingHelper projectBuildingHelper;
+
    @Inject
    private RepositorySystem repositorySystem;
 
@@ -121,8 +156,27 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
 
    private final Map<MavenSession, MavenSession> actualToBootSession = new HashMap<MavenSession, MavenSession>();
    private final Map<MavenSession, MavenSession> bootToActualSession = new HashMap<MavenSession, MavenSession>();
-   private final Map<Object, Object> bootContext = new HashMap<Object, Object>();
+   private final Map<Object, Object> bootContext = new ConcurrentHashMap<Object, Object>();
+
+   private final ExtensionRealmPool realmPool = new ExtensionRealmPool();
+
+   private final Map<MavenProject, Set<String>> resolvedScopes = new IdentityHashMap<MavenProject, Set<String>>();
+
+   private volatile ClasspathLockFile lockFile;
+
+   private volatile boolean updateLockFile;
+
+   private final PendingShutdowns pendingShutdowns = new PendingShutdowns();
+
+   private static final String SNAPSHOT_KEY = AbstractBootstrapper.class.getName() + "#snapshot";
+
+   private static final String BUILT_AT_KEY = AbstractBootstrapper.class.getName() + "#builtAt";
+
+   private static final String REQUEST_KEY = AbstractBootstrapper.class.getName() + "#request";
+
+   private static final String REACTOR_KEY = AbstractBootstrapper.class.getName() + "#reactor";
 
+   private static final int STREAMING_CHUNK_SIZE = 32;
 
    private final String extensionKey;
 
@@ -147,25 +201,68 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
 
    public void executionStarted(MavenSession actualSession, MavenExecutionRequest executionRequest)
       throws MavenExecutionException {
-      final MavenSession bootSession = createBootSession(actualSession);
+      awaitPendingShutdown();
+
+      // decide as cheap as possible whether there is anything to do, before sessions are copied or listeners added
+      if (!isBootstrapRequired(actualSession)) {
+         return;
+      }
+
+      // in streaming mode descriptors are discovered while the boot session is already set up, otherwise they are
+      // discovered with the actual session, so that sessions are only copied if there are projects to bootstrap
+      final boolean streaming = isStreamingDiscovery(actualSession);
 
-      final List<File> descriptors = getProjectDescriptors(bootSession);
-      if (descriptors.isEmpty()) {
+      List<File> descriptors = streaming ? null : getProjectDescriptors(actualSession);
+      if (descriptors != null && descriptors.isEmpty()) {
          logger.info("Skipping bootstrapper " + extensionKey + ". No projects found.");
          return;
       }
 
+      final MavenSession bootSession = createBootSession(actualSession);
+
+      if (descriptors != null && isRespectProjectSelection(bootSession)) {
+         descriptors = selectProjectDescriptors(bootSession, descriptors);
+         if (descriptors.isEmpty()) {
+            logger.info("Skipping bootstrapper " + extensionKey + ". No projects selected.");
+            return;
+         }
+      }
 
       mapSessions(actualSession, bootSession);
 
-      logger.info("Executing bootstrapper " + extensionKey + "...");
+      if (!streaming) {
+         logger.info("Executing bootstrapper " + extensionKey + "...");
+      }
 
       plexusContainer.getContainerRealm().getWorld().addListener(importEnforcer);
 
       final MavenSession oldSession = legacySupport.getSession();
       try {
          legacySupport.setSession(bootSession);
-         setupBootSession(bootSession, descriptors);
+
+         if (streaming) {
+            streamBootSession(actualSession, bootSession);
+            if (bootSession.getProjects().isEmpty()) {
+               // leave everything as if this bootstrapper wasn't executed at all
+               unmapSessions(actualSession, bootSession);
+               plexusContainer.getContainerRealm().getWorld().removeListener(importEnforcer);
+               logger.info("Skipping bootstrapper " + extensionKey + ". No projects found.");
+               return;
+            }
+            logger.info("Executing bootstrapper " + extensionKey + "...");
+         }
+
+         final File lockFilePath = getLockFile(bootSession);
+         if (lockFilePath != null) {
+            final ArtifactRepository localRepository = bootSession.getLocalRepository();
+            lockFile = ClasspathLockFile.read(lockFilePath, localRepository == null ? null : new File(
+               localRepository.getBasedir()));
+            updateLockFile = isUpdateLockFile(bootSession);
+         }
+
+         if (!streaming) {
+            setupBootSession(bootSession, buildBootstrapProjects(bootSession, descriptors));
+         }
 
          final List<MavenProject> projects = bootSession.getProjects();
          if (projects.size() > 1) {
@@ -181,11 +278,35 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
          performBootSession(bootSession);
          adjustActualSession(bootSession, actualSession);
 
+         if (lockFile != null && updateLockFile) {
+            // drop the classpaths of extension-extensions which are gone
+            lockFile.retainUsed();
+            lockFile.write();
+            logger.info("Updated lockfile " + lockFile.getFile());
+         }
+
+         final WorkspaceReader workspaceReader = bootSession.getRepositorySession().getWorkspaceReader();
+         if (workspaceReader instanceof WorkspaceIndex) {
+            final WorkspaceIndex workspaceIndex = (WorkspaceIndex) workspaceReader;
+            logger.info("Bootstrapper workspace index: " + workspaceIndex.getHits() + " hits, "
+               + workspaceIndex.getMisses() + " misses");
+         }
+
+         final ArtifactResolutionMemo resolutionMemo = ArtifactResolutionMemo.get(bootSession.getRepositorySession());
+         if (resolutionMemo.getResolutions() > 0) {
+            logger.info("Resolved " + resolutionMemo.getResolutions() + " extension-extensions, saved "
+               + resolutionMemo.getSavedResolutions() + " redundant resolutions");
+         }
+
          logger.info("");
          logger.info("------------------------------------------------------------------------");
          logger.info("Finished bootstrapper " + extensionKey);
       }
       finally {
+         lockFile = null;
+         synchronized (resolvedScopes) {
+            resolvedScopes.clear();
+         }
          legacySupport.setSession(oldSession);
       }
    }
@@ -208,14 +329,240 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       bootToActualSession.put(bootSession, actualSession);
    }
 
-   private void setupBootSession(MavenSession bootSession, Collection<File> descriptors) {
-      bootSession.setProjects(buildBootstrapProjects(bootSession, descriptors));
+   private void unmapSessions(MavenSession actualSession, final MavenSession bootSession) {
+      actualToBootSession.remove(actualSession);
+      bootToActualSession.remove(bootSession);
+   }
+
+   private void streamBootSession(MavenSession actualSession, MavenSession bootSession) {
+      final ProjectBuildingRequest request = newProjectBuildingRequest(bootSession);
+      final ProjectModelCache modelCache = newProjectModelCache(bootSession);
+      final ProjectDescriptorFilter filter = isPrefilterProjectDescriptors(bootSession) ? newProjectDescriptorFilter()
+         : null;
+
+      final int threads = Math.max(1, getProjectBuilderThreads(bootSession));
+      final ExecutorService executor = Executors.newFixedThreadPool(threads, new BootstrapThreadFactory(
+         "bootstrap-project-builder"));
+      final long start = System.currentTimeMillis();
+      final List<MavenProject> builtProjects;
+      final ProjectDescriptorPipeline pipeline;
+      try {
+         pipeline = new ProjectDescriptorPipeline(executor, STREAMING_CHUNK_SIZE, filter,
+            new ProjectDescriptorPipeline.ChunkBuilder() {
+               public List<MavenProject> build(List<File> descriptors) throws ProjectBuildingException {
+                  return new BootProjectBuilder(projectBuilder, repositorySystem, modelCache)
+                     .build(descriptors, new DefaultProjectBuildingRequest(request));
+               }
+            });
+         discoverProjectDescriptors(bootSession, pipeline);
+         builtProjects = pipeline.finish();
+      }
+      catch (ProjectBuildingException e) {
+         throw new IllegalStateException("Cannot build bootstrapper project for " + e.getPomFile(), e);
+      }
+      finally {
+         executor.shutdownNow();
+      }
+
+      if (builtProjects.isEmpty()) {
+         bootSession.setProjects(builtProjects);
+         return;
+      }
+
+      for (File descriptor : pipeline.getSkippedDescriptors()) {
+         logger.info("Skipping module descriptor " + descriptor.getPath());
+      }
+      logger.info("Discovered and built " + builtProjects.size() + " bootstrapper projects in "
+         + (System.currentTimeMillis() - start) + " ms");
+      if (filter != null) {
+         logger.info("Bootstrapper pre-scan eliminated " + filter.getEliminated() + " of "
+            + pipeline.getDescriptors().size() + " descriptors (" + filter.getScanned() + " POMs scanned)");
+      }
+      if (modelCache != null) {
+         logger.info("Bootstrapper model cache: " + modelCache.getHits() + " hits, " + modelCache.getMisses()
+            + " misses");
+      }
+
+      List<MavenProject> projects = builtProjects;
+      if (isRespectProjectSelection(bootSession)) {
+         // the selection needs the complete reactor, so in streaming mode unselected projects are dropped after building
+         final Set<File> selectedFiles = new HashSet<File>();
+         for (File descriptor : selectProjectDescriptors(bootSession, pipeline.getDescriptors())) {
+            selectedFiles.add(descriptor.getAbsoluteFile());
+         }
+         projects = new ArrayList<MavenProject>();
+         for (MavenProject project : builtProjects) {
+            if (selectedFiles.contains(project.getFile().getAbsoluteFile())) {
+               projects.add(project);
+            }
+         }
+      }
+
+      setupBootSession(bootSession, finishBootstrapProjects(projects));
+   }
+
+   /**
+    * Returns <code>true</code> if project descriptors should be discovered via
+    * {@link #discoverProjectDescriptors(MavenSession, ProjectDescriptorSink)}, so that models are pre-scanned and built
+    * while descriptors are still being discovered. In streaming mode the boot session is created before discovery,
+    * projects of the actual session or other bootstrappers are not shared and the project selection of the request is
+    * applied after building. Returns <code>false</code> per default.
+    */
+   protected boolean isStreamingDiscovery(MavenSession actualSession) {
+      return false;
+   }
+
+   /**
+    * Discovers the descriptors of the projects to bootstrap and publishes them to the sink as soon as they are found.
+    * Only used in streaming mode. Per default adapts
+    * {@link #discoverProjectDescriptors(MavenSession, Collection, Collection)}, which doesn't stream.
+    */
+   protected void discoverProjectDescriptors(MavenSession bootSession, ProjectDescriptorSink sink) {
+      final Collection<File> descriptors = new LinkedHashSet<File>();
+      final Collection<File> skippedDescriptors = new HashSet<File>();
+      discoverProjectDescriptors(bootSession, descriptors, skippedDescriptors);
+      for (File descriptor : descriptors) {
+         if (skippedDescriptors.contains(descriptor)) {
+            sink.skip(descriptor);
+         }
+         else {
+            sink.add(descriptor);
+         }
+      }
+   }
+
+   /**
+    * Publishes all project descriptors found below the base directory to the sink. Bootstrappers may call this from
+    * their {@link #discoverProjectDescriptors(MavenSession, Collection, Collection)} implementation instead of walking
+    * the file system on their own. Directories matching {@link #getProjectDescriptorExcludes(MavenSession)} are pruned
+    * early and sub directories are walked by {@link #getDiscoveryThreads(MavenSession)} threads. If
+    * {@link #getProjectDescriptorIndexFile(MavenSession)} returns a file, only directories changed since the last scan
+    * are listed.
+    */
+   protected void scanProjectDescriptors(MavenSession session, File baseDir, ProjectDescriptorSink sink) {
+      final ProjectDescriptorScanner scanner = new ProjectDescriptorScanner(getProjectDescriptorIncludes(session),
+         getProjectDescriptorExcludes(session));
+
+      final File indexFile = getProjectDescriptorIndexFile(session);
+      if (indexFile != null) {
+         final long start = System.currentTimeMillis();
+         final ProjectDescriptorIndex index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+         index.scan(baseDir, sink);
+         if (!index.write(baseDir)) {
+            logger.warn("Cannot write project descriptor index " + indexFile);
+         }
+         if (logger.isDebugEnabled()) {
+            logger.debug("Revalidated " + index.getRevalidated() + " of " + index.getDirectories()
+               + " indexed directories below " + baseDir + " in " + (System.currentTimeMillis() - start) + " ms");
+         }
+         return;
+      }
+
+      final int threads = getDiscoveryThreads(session);
+      final ExecutorService executor = threads < 2 ? null : Executors.newFixedThreadPool(threads,
+         new BootstrapThreadFactory("bootstrap-discovery"));
+      final long start = System.currentTimeMillis();
+      try {
+         scanner.scan(baseDir, sink, executor);
+      }
+      finally {
+         if (executor != null) {
+            executor.shutdownNow();
+         }
+      }
+      if (logger.isDebugEnabled()) {
+         logger.debug("Scanned " + scanner.getScannedDirectories() + " directories below " + baseDir + " in "
+            + (System.currentTimeMillis() - start) + " ms");
+      }
+   }
+
+   /**
+    * Adds all project descriptors found below the base directory to the collection, sorted by path. See
+    * {@link #scanProjectDescriptors(MavenSession, File, ProjectDescriptorSink)}.
+    */
+   protected void scanProjectDescriptors(MavenSession session, File baseDir, Collection<File> descriptors) {
+      final Set<File> found = new TreeSet<File>();
+      scanProjectDescriptors(session, baseDir, new ProjectDescriptorSink() {
+         public synchronized void add(File descriptor) {
+            found.add(descriptor);
+         }
+
+         public synchronized void skip(File descriptor) {
+            found.remove(descriptor);
+         }
+      });
+      descriptors.addAll(found);
+   }
+
+   /**
+    * Returns the Ant style patterns, relative to the base directory, of the descriptors to scan for. Returns
+    * <code>**&#47;pom.xml</code> per default.
+    */
+   protected List<String> getProjectDescriptorIncludes(MavenSession session) {
+      return ProjectDescriptorScanner.DEFAULT_INCLUDES;
+   }
+
+   /**
+    * Returns the Ant style patterns, relative to the base directory, of the files and directories to ignore when
+    * scanning for descriptors. Returns patterns for <code>target</code> and hidden directories per default.
+    */
+   protected List<String> getProjectDescriptorExcludes(MavenSession session) {
+      return ProjectDescriptorScanner.DEFAULT_EXCLUDES;
+   }
+
+   /**
+    * Returns the file to persist the descriptors found by
+    * {@link #scanProjectDescriptors(MavenSession, File, ProjectDescriptorSink)} in, together with the modification
+    * times of the walked directories, or <code>null</code> to walk the whole tree on every build. With an index the
+    * walk is not parallelized, as unchanged directories are merely stat'ed. Returns <code>null</code> per default.
+    */
+   protected File getProjectDescriptorIndexFile(MavenSession session) {
+      return null;
+   }
+
+   /**
+    * Returns <code>true</code> to look up the projects of the boot and of the actual reactor in one index, instead of
+    * chaining a reader for the boot reactor in front of the workspace reader of the repository session. Boot projects
+    * are asked before actual projects with the same coordinates. If the actual session is embedded, its projects are
+    * indexed as well and misses are only passed on to the workspace reader of the request, e.g. the one of an IDE.
+    * Otherwise the actual reactor is not built yet when bootstrapping, so only boot projects are indexed and misses are
+    * passed on to the workspace reader of the repository session, which makes the index equivalent to the chain.
+    * Returns <code>false</code> per default.
+    */
+   protected boolean isUseWorkspaceIndex(MavenSession bootSession) {
+      return false;
+   }
+
+   /**
+    * Returns the number of threads to walk the file system with when scanning for descriptors. Returns <code>1</code>
+    * per default.
+    */
+   protected int getDiscoveryThreads(MavenSession session) {
+      return 1;
+   }
+
+   private void setupBootSession(MavenSession bootSession, List<MavenProject> projects) {
+      bootSession.setProjects(projects);
 
       try {
          Map<String, MavenProject> projectMap = getProjectMap(bootSession.getProjects());
          DefaultRepositorySystemSession repoSession = (DefaultRepositorySystemSession) bootSession.getRepositorySession();
-         repoSession.setWorkspaceReader(ChainedWorkspaceReader.newInstance(new ReactorReader(projectMap),
-            repoSession.getWorkspaceReader()));
+         if (isUseWorkspaceIndex(bootSession)) {
+            final MavenSession actualSession = bootToActualSession.get(bootSession);
+            final List<MavenProject> actualProjects = actualSession == null || actualSession.getProjects() == null
+               ? Collections.<MavenProject> emptyList()
+               : actualSession.getProjects();
+            // the reader of the repository session contains the reactor reader of the actual session, which must not be
+            // asked a second time for indexed actual projects, so then only the reader of the request is left, e.g. the
+            // one of an IDE
+            final WorkspaceReader delegate = actualProjects.isEmpty() ? repoSession.getWorkspaceReader() : actualSession
+               .getRequest().getWorkspaceReader();
+            repoSession.setWorkspaceReader(new WorkspaceIndex(projectMap, actualProjects, delegate));
+         }
+         else {
+            repoSession.setWorkspaceReader(ChainedWorkspaceReader.newInstance(new ReactorReader(projectMap),
+               repoSession.getWorkspaceReader()));
+         }
       }
       catch (org.apache.maven.DuplicateProjectException e) {
          throw new IllegalStateException(e);
@@ -223,19 +570,183 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
    }
 
    private void performBootSession(final MavenSession bootSession) {
-      for (MavenProject bootProject : bootSession.getProjects()) {
-         bootSession.setCurrentProject(bootProject);
+      final MavenSession actualSession = bootToActualSession.get(bootSession);
 
-         final List<ClassRealm> bootExtensionClassRealms = discoverBootExtensionClassRealms(bootProject);
-         for (ClassRealm bootExtensionClassRealm : bootExtensionClassRealms) {
-            performBootProject(bootSession, bootProject, bootExtensionClassRealm);
+      final int resolutionThreads = getResolutionThreads(bootSession);
+      if (resolutionThreads > 0 && !isLazyDependencyResolution(bootSession)) {
+         resolveBootProjects(bootSession, resolutionThreads);
+      }
+
+      final int threads = getBootThreads(bootSession);
+      final int prefetchWindow = getPrefetchWindow(bootSession);
+      if (threads < 2 && prefetchWindow > 0 && bootSession.getProjects().size() > 1) {
+         pipelineBootSession(bootSession, actualSession, prefetchWindow);
+      }
+      else if (threads < 2 || bootSession.getProjects().size() < 2) {
+         for (MavenProject bootProject : bootSession.getProjects()) {
+            bootSession.setCurrentProject(bootProject);
+            performBootProject(bootSession, actualSession, bootProject);
          }
       }
+      else {
+         logger.info("Using " + threads + " threads to bootstrap projects");
+
+         // independent projects are bootstrapped concurrently, participants which don't declare to be safe for that
+         // are invoked one at a time
+         final Object sequentialLock = new Object();
+         final ProjectGraphExecutor executor = new ProjectGraphExecutor(newProjectSorter(bootSession.getProjects()));
+         executor.execute(threads, new ProjectGraphExecutor.ProjectTask() {
+            public void execute(MavenProject bootProject) {
+               // like Maven's multi threaded builder, each project gets its own session to not share the current project
+               final MavenSession projectSession = bootSession.clone();
+               projectSession.setCurrentProject(bootProject);
+               performBootProject(projectSession, actualSession, bootProject, sequentialLock);
+            }
+         });
+      }
    }
 
-   private void performBootProject(MavenSession bootSession, MavenProject bootProject,
-      ClassRealm bootExtensionClassRealm) {
-      ensureDependenciesAreResolved(bootSession);
+   private void pipelineBootSession(MavenSession bootSession, MavenSession actualSession, int prefetchWindow) {
+      final List<MavenProject> projects = bootSession.getProjects();
+      final ExecutorService executor = Executors.newFixedThreadPool(Math.min(prefetchWindow, projects.size() - 1),
+         new BootstrapThreadFactory("bootstrap-prefetch"));
+      try {
+         final Map<MavenProject, Future<?>> prefetches = new IdentityHashMap<MavenProject, Future<?>>();
+         for (int i = 0; i < projects.size(); i++) {
+            for (int j = i + 1; j <= i + prefetchWindow && j < projects.size(); j++) {
+               final MavenProject nextProject = projects.get(j);
+               if (!prefetches.containsKey(nextProject)) {
+                  final MavenSession projectSession = bootSession.clone();
+                  projectSession.setCurrentProject(nextProject);
+                  prefetches.put(nextProject, executor.submit(new Runnable() {
+                     public void run() {
+                        prefetchBootProject(projectSession, nextProject);
+                     }
+                  }));
+               }
+            }
+
+            final MavenProject bootProject = projects.get(i);
+            final Future<?> prefetch = prefetches.remove(bootProject);
+            if (prefetch != null) {
+               join(Collections.<Future<?>> singletonList(prefetch));
+            }
+
+            // participants are still invoked one project after another in reactor order
+            bootSession.setCurrentProject(bootProject);
+            performBootProject(bootSession, actualSession, bootProject);
+         }
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private void prefetchBootProject(MavenSession bootSession, MavenProject bootProject) {
+      if (!isLazyDependencyResolution(bootSession)) {
+         ensureDependenciesAreResolved(bootSession, getDependencyResolutionRequired());
+      }
+      for (ClassRealm bootExtensionClassRealm : discoverBootExtensionClassRealms(bootProject)) {
+         // participants may already use the context class loader while they are constructed
+         final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+         Thread.currentThread().setContextClassLoader(bootExtensionClassRealm);
+         try {
+            discoverBootstrapParticipants(bootSession, bootProject, bootExtensionClassRealm);
+         }
+         finally {
+            Thread.currentThread().setContextClassLoader(originalClassLoader);
+         }
+      }
+   }
+
+   /**
+    * Returns the number of boot projects which are prepared in the background while the participants of the current
+    * project are invoked. Preparation covers dependency resolution as well as the setup of extension-extension realms
+    * and the lookup of participants. Participants are still invoked in reactor order, but can't influence the
+    * dependency resolution of prepared projects anymore. As preparation runs on worker threads, the realm hooks, e.g.
+    * {@link #addCustomClassLoaders(MavenSession, MavenProject, ClassRealm)}, must not rely on thread bound state when
+    * prefetching is enabled. Only used if {@link #getBootThreads(MavenSession)} is less than <code>2</code>. Returns
+    * <code>0</code> per default, which disables prefetching.
+    */
+   protected int getPrefetchWindow(MavenSession bootSession) {
+      return 0;
+   }
+
+   private void resolveBootProjects(MavenSession bootSession, int threads) {
+      final List<MavenProject> projects = bootSession.getProjects();
+      final ExecutorService executor = threads < 2 || projects.size() < 2 ? null : Executors.newFixedThreadPool(
+         Math.min(threads, projects.size()), new BootstrapThreadFactory("bootstrap-resolver"));
+      try {
+         final List<Future<?>> resolutions = new ArrayList<Future<?>>();
+         for (MavenProject bootProject : projects) {
+            // each resolution gets its own session to not share the current project, the repository session is shared
+            final MavenSession projectSession = bootSession.clone();
+            projectSession.setCurrentProject(bootProject);
+            if (executor == null) {
+               ensureDependenciesAreResolved(projectSession, getDependencyResolutionRequired());
+            }
+            else {
+               resolutions.add(executor.submit(new Runnable() {
+                  public void run() {
+                     ensureDependenciesAreResolved(projectSession, getDependencyResolutionRequired());
+                  }
+               }));
+            }
+         }
+         join(resolutions);
+      }
+      finally {
+         if (executor != null) {
+            executor.shutdownNow();
+         }
+      }
+   }
+
+   /**
+    * Returns the number of threads used to resolve the dependencies of all boot projects in a single batch before any
+    * participant is invoked. Note that participants then can't influence the dependency resolution of downstream boot
+    * projects anymore. Returns <code>0</code> per default, which resolves the dependencies of each boot project right
+    * before its participants are invoked.
+    */
+   protected int getResolutionThreads(MavenSession bootSession) {
+      return 0;
+   }
+
+   private void performBootProject(MavenSession bootSession, MavenSession actualSession, MavenProject bootProject) {
+      performBootProject(bootSession, actualSession, bootProject, null);
+   }
+
+   /**
+    * Invokes the participants of the given boot project in order. If <code>sequentialLock</code> is not
+    * <code>null</code>, participants which don't implement {@link ConcurrentBeforeBuildBootstrapParticipant} are invoked
+    * while holding it.
+    */
+   private void performBootProject(MavenSession bootSession, MavenSession actualSession, MavenProject bootProject,
+      Object sequentialLock) {
+      final List<ClassRealm> bootExtensionClassRealms = discoverBootExtensionClassRealms(bootProject);
+      for (ClassRealm bootExtensionClassRealm : bootExtensionClassRealms) {
+         performBootProject(bootSession, actualSession, bootProject, bootExtensionClassRealm, sequentialLock);
+      }
+   }
+
+   /**
+    * Returns the number of threads used to bootstrap the projects of the boot session. Projects are executed along the
+    * dependency graph of the boot reactor, so a project is only bootstrapped after all its upstream projects. The
+    * participants of a project are invoked in order. Only participants which implement
+    * {@link ConcurrentBeforeBuildBootstrapParticipant} are invoked concurrently for independent projects, all others are
+    * invoked one at a time. Returns <code>1</code> per default, which bootstraps all projects sequentially in reactor
+    * order.
+    */
+   protected int getBootThreads(MavenSession bootSession) {
+      return 1;
+   }
+
+   private void performBootProject(MavenSession bootSession, MavenSession actualSession, MavenProject bootProject,
+      ClassRealm bootExtensionClassRealm, Object sequentialLock) {
+      final boolean lazyResolution = isLazyDependencyResolution(bootSession);
+      if (!lazyResolution) {
+         ensureDependenciesAreResolved(bootSession, getDependencyResolutionRequired());
+      }
 
       final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
       Thread.currentThread().setContextClassLoader(bootExtensionClassRealm);
@@ -243,12 +754,16 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
          final List<?> bootParticipants = discoverBootstrapParticipants(bootSession, bootProject,
             bootExtensionClassRealm);
          for (Object bootParticipant : bootParticipants) {
-            if (bootParticipant instanceof BootstrapParticipant) {
-               ((BootstrapParticipant) bootParticipant).beforeBuild(bootSession, bootProject,
-                  bootToActualSession.get(bootSession));
+            if (lazyResolution) {
+               ensureDependenciesAreResolved(bootSession, getDependencyResolutionRequired(bootParticipant));
+            }
+            if (sequentialLock == null || bootParticipant instanceof ConcurrentBeforeBuildBootstrapParticipant) {
+               beforeBuild(bootSession, actualSession, bootProject, bootParticipant);
             }
             else {
-               ((BootstrapParticipant2) bootParticipant).beforeBuild(bootSession, bootProject, bootContext);
+               synchronized (sequentialLock) {
+                  beforeBuild(bootSession, actualSession, bootProject, bootParticipant);
+               }
             }
          }
       }
@@ -257,19 +772,67 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       }
    }
 
-   private void ensureDependenciesAreResolved(MavenSession session) {
-      final MojoDescriptor mojoDescriptor = new MojoDescriptor();
-      mojoDescriptor.setAggregator(false);
-      // mojoDescriptor.setDependencyCollectionRequired(getDependencyResolutionRequired());
-      mojoDescriptor.setDependencyResolutionRequired(getDependencyResolutionRequired());
+   private void beforeBuild(MavenSession bootSession, MavenSession actualSession, MavenProject bootProject,
+      Object bootParticipant) {
+      if (bootParticipant instanceof BootstrapParticipant) {
+         ((BootstrapParticipant) bootParticipant).beforeBuild(bootSession, bootProject, actualSession);
+      }
+      else {
+         ((BootstrapParticipant2) bootParticipant).beforeBuild(bootSession, bootProject, bootContext);
+      }
+   }
 
-      final MojoExecution mojoExecution = new MojoExecution(mojoDescriptor);
+   /**
+    * Returns <code>true</code> if the dependencies of a boot project should only be resolved right before a participant
+    * is invoked that needs them. Participants implementing {@link DependencyResolutionAwareBootstrapParticipant} declare
+    * the scope they need, all other participants get {@link #getDependencyResolutionRequired()}. Projects whose
+    * participants don't need any scope are not resolved at all. Disables {@link #getResolutionThreads(MavenSession)}.
+    * Returns <code>false</code> per default.
+    */
+   protected boolean isLazyDependencyResolution(MavenSession bootSession) {
+      return false;
+   }
+
+   private String getDependencyResolutionRequired(Object bootParticipant) {
+      if (bootParticipant instanceof DependencyResolutionAwareBootstrapParticipant) {
+         return ((DependencyResolutionAwareBootstrapParticipant) bootParticipant).getDependencyResolutionRequired();
+      }
+      return getDependencyResolutionRequired();
+   }
 
-      final DependencyContext dependencyContext = mojoExecutor.newDependencyContext(session,
-         Collections.singletonList(mojoExecution));
+   private void ensureDependenciesAreResolved(MavenSession session, String scope) {
+      if (scope == null) {
+         return;
+      }
+
+      // resolve each project and scope only once, even if it is bootstrapped by multiple boot extensions
+      final List<String> scopes;
+      synchronized (resolvedScopes) {
+         Set<String> projectScopes = resolvedScopes.get(session.getCurrentProject());
+         if (projectScopes == null) {
+            projectScopes = new LinkedHashSet<String>();
+            resolvedScopes.put(session.getCurrentProject(), projectScopes);
+         }
+         if (!projectScopes.add(scope)) {
+            return;
+         }
+         scopes = new ArrayList<String>(projectScopes);
+      }
+
+      // one execution per scope, so that the artifacts of previously resolved scopes stay visible to the project
+      final List<MojoExecution> mojoExecutions = new ArrayList<MojoExecution>();
+      for (String projectScope : scopes) {
+         final MojoDescriptor mojoDescriptor = new MojoDescriptor();
+         mojoDescriptor.setAggregator(false);
+         mojoDescriptor.setDependencyResolutionRequired(projectScope);
+         mojoExecutions.add(new MojoExecution(mojoDescriptor));
+      }
+
+      final DependencyContext dependencyContext = mojoExecutor.newDependencyContext(session, mojoExecutions);
 
       try {
-         mojoExecutor.ensureDependenciesAreResolved(mojoDescriptor, session, dependencyContext);
+         mojoExecutor.ensureDependenciesAreResolved(mojoExecutions.get(0).getMojoDescriptor(), session,
+            dependencyContext);
       }
       catch (LifecycleExecutionException e) {
          throw new IllegalStateException(e);
@@ -315,51 +878,167 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
 
    protected abstract void adjustActualSession(MavenSession bootSession, MavenSession actualSession);
 
-   public void executionEnded(MavenSession actualSession, MavenExecutionResult executionResult) {
+   public void executionEnded(final MavenSession actualSession, MavenExecutionResult executionResult) {
       final MavenSession bootSession = actualToBootSession.remove(actualSession);
       if (bootSession == null) {
          return;
       }
 
+      bootToActualSession.remove(bootSession);
+      BootSessionCoordinator.getInstance().release(actualSession);
+
+      final int realmPoolSize = getRealmPoolSize(bootSession);
+
+      final int sharedRealms = realmPool.getSharedRealmCount(bootSession.getRepositorySession());
+      if (sharedRealms > 0) {
+         logger.info("Shared extension-extension realms saved " + sharedRealms + " realms");
+      }
+
+      if (isAsyncShutdown(bootSession)) {
+         // the listener is shared by all sessions of this bootstrapper, so a late shutdown must not remove it
+         plexusContainer.getContainerRealm().getWorld().removeListener(importEnforcer);
+
+         // LegacySupport is backed by an inheritable thread local that is shared with the current thread, so we must not
+         // switch it to the boot session here
+         pendingShutdowns.start(new BootstrapThreadFactory("bootstrap-shutdown"), new Runnable() {
+            public void run() {
+               try {
+                  shutdownBootSession(bootSession, actualSession);
+               }
+               catch (RuntimeException e) {
+                  logger.error("Failed to shutdown bootstrapper " + extensionKey, e);
+               }
+               finally {
+                  // participants run in these realms until now, the release only concerns the realms owned by this
+                  // boot session and never touches realms another session has acquired meanwhile
+                  realmPool.release(bootSession.getRepositorySession(), realmPoolSize);
+               }
+            }
+         }, getShutdownTimeout(bootSession));
+         return;
+      }
+
       final MavenSession oldSession = legacySupport.getSession();
       try {
-         bootToActualSession.remove(bootSession);
-
          legacySupport.setSession(bootSession);
-         shutdownBootSession(bootSession);
+         shutdownBootSession(bootSession, actualSession);
       }
       finally {
          legacySupport.setSession(oldSession);
+         realmPool.release(bootSession.getRepositorySession(), realmPoolSize);
       }
 
       plexusContainer.getContainerRealm().getWorld().removeListener(importEnforcer);
    }
 
-   private void shutdownBootSession(MavenSession bootSession) {
-      for (MavenProject bootProject : bootSession.getProjects()) {
-         bootSession.setCurrentProject(bootProject);
+   /**
+    * Returns <code>true</code> if the boot session should be shutdown asynchronously, so that slow
+    * <code>afterBuild</code> participants don't delay the end of the actual Maven session. Pending shutdowns are joined
+    * for at most {@link #getShutdownTimeout(MavenSession)} before the next session starts or the JVM exits. Note that
+    * in asynchronous mode {@link LegacySupport} is not switched to the boot session. Returns <code>false</code> per
+    * default.
+    */
+   protected boolean isAsyncShutdown(MavenSession bootSession) {
+      return false;
+   }
+
+   /**
+    * Returns the maximum time in milliseconds to wait for an asynchronous shutdown. Returns <code>30000</code> per
+    * default.
+    */
+   protected long getShutdownTimeout(MavenSession bootSession) {
+      return 30000L;
+   }
 
-         final List<ClassRealm> bootExtensionClassRealms = discoverBootExtensionClassRealms(bootProject);
-         for (ClassRealm bootExtensionClassRealm : bootExtensionClassRealms) {
-            shutdownBootProject(bootSession, bootProject, bootExtensionClassRealm);
+   /**
+    * Returns the number of threads used to invoke <code>afterBuild</code> of participants which implement
+    * {@link ThreadSafeBootstrapParticipant}. All other participants are invoked sequentially in reactor order. Returns
+    * <code>1</code> per default.
+    */
+   protected int getShutdownThreads(MavenSession bootSession) {
+      return 1;
+   }
+
+   private void awaitPendingShutdown() {
+      final int running = pendingShutdowns.await();
+      if (running > 0) {
+         logger.warn(running + " shutdown(s) of bootstrapper " + extensionKey + " did not complete in time");
+      }
+   }
+
+   private void shutdownBootSession(MavenSession bootSession, MavenSession actualSession) {
+      final int threads = getShutdownThreads(bootSession);
+      final ExecutorService executor = threads < 2 ? null : Executors.newFixedThreadPool(threads,
+         new BootstrapThreadFactory("bootstrap-after-build"));
+      try {
+         final List<Future<?>> concurrentShutdowns = new ArrayList<Future<?>>();
+         for (MavenProject bootProject : bootSession.getProjects()) {
+            bootSession.setCurrentProject(bootProject);
+
+            final List<ClassRealm> bootExtensionClassRealms = discoverBootExtensionClassRealms(bootProject);
+            for (ClassRealm bootExtensionClassRealm : bootExtensionClassRealms) {
+               shutdownBootProject(bootSession, actualSession, bootProject, bootExtensionClassRealm, executor,
+                  concurrentShutdowns);
+            }
+         }
+         join(concurrentShutdowns);
+      }
+      finally {
+         if (executor != null) {
+            executor.shutdown();
          }
       }
    }
 
-   private void shutdownBootProject(MavenSession bootSession, MavenProject bootProject,
-      ClassRealm bootExtensionClassRealm) {
+   private static void join(List<Future<?>> futures) {
+      for (Future<?> future : futures) {
+         try {
+            future.get();
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+         }
+         catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+               throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+               throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+         }
+      }
+   }
+
+   private void shutdownBootProject(MavenSession bootSession, final MavenSession actualSession,
+      final MavenProject bootProject, final ClassRealm bootExtensionClassRealm, ExecutorService executor,
+      List<Future<?>> concurrentShutdowns) {
       final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
       Thread.currentThread().setContextClassLoader(bootExtensionClassRealm);
       try {
          final List<?> bootParticipants = discoverBootstrapParticipants(bootSession, bootProject,
             bootExtensionClassRealm);
-         for (Object bootParticipant : bootParticipants) {
-            if (bootParticipant instanceof BootstrapParticipant) {
-               ((BootstrapParticipant) bootParticipant).afterBuild(bootSession, bootProject,
-                  bootToActualSession.get(bootSession));
+         for (final Object bootParticipant : bootParticipants) {
+            if (executor != null && bootParticipant instanceof ThreadSafeBootstrapParticipant) {
+               final MavenSession projectSession = bootSession.clone();
+               projectSession.setCurrentProject(bootProject);
+               concurrentShutdowns.add(executor.submit(new Runnable() {
+                  public void run() {
+                     final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+                     Thread.currentThread().setContextClassLoader(bootExtensionClassRealm);
+                     try {
+                        afterBuild(bootParticipant, projectSession, bootProject, actualSession);
+                     }
+                     finally {
+                        Thread.currentThread().setContextClassLoader(originalClassLoader);
+                     }
+                  }
+               }));
             }
             else {
-               ((BootstrapParticipant2) bootParticipant).afterBuild(bootSession, bootProject, bootContext);
+               afterBuild(bootParticipant, bootSession, bootProject, actualSession);
             }
          }
       }
@@ -368,6 +1047,16 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       }
    }
 
+   private void afterBuild(Object bootParticipant, MavenSession bootSession, MavenProject bootProject,
+      MavenSession actualSession) {
+      if (bootParticipant instanceof BootstrapParticipant) {
+         ((BootstrapParticipant) bootParticipant).afterBuild(bootSession, bootProject, actualSession);
+      }
+      else {
+         ((BootstrapParticipant2) bootParticipant).afterBuild(bootSession, bootProject, bootContext);
+      }
+   }
+
    private List<?> discoverBootstrapParticipants(MavenSession bootSession, MavenProject bootProject,
       ClassRealm bootExtensionClassRealm) {
       final String key = BootstrapParticipant.class.getName() + "@" + bootExtensionClassRealm.getId();
@@ -418,6 +1107,14 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       }
    }
 
+   /**
+    * Adds class loaders to the extension realm of a boot project, which contains the bootstrap participants. Per default
+    * the realms of the extension-extensions returned by {@link #getExtensionExtensions(MavenSession, MavenProject)} are
+    * added. Like all hooks which set up the realms of a boot project, this may be invoked concurrently on worker
+    * threads if {@link #getBootThreads(MavenSession)} or {@link #getPrefetchWindow(MavenSession)} enable them.
+    * Implementations must therefore use the given per project session instead of {@link LegacySupport} or other thread
+    * bound state.
+    */
    protected void addCustomClassLoaders(MavenSession bootSession, MavenProject bootProject, ClassRealm extensionRealm) {
       addExtensionExtensionsClassLoaders(bootSession, bootProject, extensionRealm);
    }
@@ -430,29 +1127,84 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
             for (Dependency extension : extensions) {
                final ClassRealm extRealm = getExtensionExtensionRealm(bootSession, bootProject, extensionRealm,
                   extension);
-               plexusContainer.discoverComponents(extRealm);
+               discoverComponents(bootSession, extRealm);
             }
          }
       }
    }
 
+   private void discoverComponents(MavenSession bootSession, ClassRealm extRealm) {
+      // discover each realm only once, even if it is looked up for many projects or reused from the pool
+      synchronized (extRealm) {
+         if (realmPool.getDiscoveredComponents(extRealm) != null) {
+            return;
+         }
+         final List<ComponentDescriptor<?>> components;
+         if (isUseComponentIndex(bootSession) && !ComponentIndex.hasComponentMetadata(extRealm.getURLs())) {
+            components = Collections.emptyList();
+         }
+         else {
+            components = plexusContainer.discoverComponents(extRealm);
+         }
+         realmPool.setDiscoveredComponents(extRealm, components);
+      }
+   }
+
+   /**
+    * Returns <code>true</code> to skip component discovery for extension-extension realms which contain neither Plexus
+    * component descriptors nor a Sisu index, so that their classpath is never scanned. Only safe if the container is
+    * configured for index based class path scanning, which is the Maven default. Returns <code>false</code> per
+    * default.
+    */
+   protected boolean isUseComponentIndex(MavenSession bootSession) {
+      return false;
+   }
+
+   /**
+    * Returns <code>true</code> if the given boot project may declare extension-extensions. May be invoked on worker
+    * threads, see {@link #addCustomClassLoaders(MavenSession, MavenProject, ClassRealm)}.
+    */
    protected abstract boolean isAllowExtensionExtensions(MavenSession bootSession, MavenProject bootProject);
 
    private ClassRealm getExtensionExtensionRealm(MavenSession bootSession, MavenProject bootProject,
       ClassRealm extensionRealm, Dependency extension) {
       final String realmId = extensionRealm.getId() + "@" + extension.toString();
 
-      // don't create unnecessary class loaders (to prevent issues with EMF package registry with relates on current ctx
-      // class loader...)
-      try {
-         return extensionRealm.getWorld().getRealm(realmId);
-      }
-      catch (NoSuchRealmException e) {
+      // clones of the boot session share its repository session
+      final Object sessionKey = bootSession.getRepositorySession();
+
+      // boot projects may be performed in parallel, ensure that concurrent lookups don't create duplicate realms
+      synchronized (extensionRealm.getWorld()) {
+         // don't create unnecessary class loaders (to prevent issues with EMF package registry with relates on current
+         // ctx class loader...)
+         ClassRealm realm = realmPool.get(sessionKey, realmId);
+         if (realm == null) {
+            final URL[] urls = resolveURLs(bootSession, bootProject, extension);
+
+            // share realms between declarations that differ (e.g. in scope) but resolve to the same classpath
+            final String classpathKey = realmPool.newClasspathKey(extensionRealm, urls);
+
+            realm = realmPool.acquire(sessionKey, realmId, classpathKey);
+            if (realm == null) {
+               realm = newExtensionExtensionRealm(extensionRealm, realmId, urls);
+               realmPool.add(sessionKey, realmId, classpathKey, realm);
+            }
+         }
+         return realm;
       }
+   }
+
+   /**
+    * Returns the maximum number of extension-extension realms that are kept for reuse by subsequent builds in the same
+    * JVM. All other realms are disposed when the boot session ends. Returns <code>0</code> per default.
+    */
+   protected int getRealmPoolSize(MavenSession bootSession) {
+      return 0;
+   }
 
+   private ClassRealm newExtensionExtensionRealm(ClassRealm extensionRealm, String realmId, URL[] urls) {
       final ClassRealm newRealm = newRealm(extensionRealm.getWorld(), realmId);
 
-      final URL[] urls = resolveURLs(bootSession, bootProject, extension);
       for (int j = 0; j < urls.length; j++) {
          newRealm.addURL(urls[j]);
       }
@@ -462,7 +1214,8 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       importEnforcer.addBootstrapImports(newRealm);
 
       if (extensionRealm.getURLs().length > 0) {
-         final ExtensionDescriptor extensionDescriptor = ExtensionDescriptorReader.read(extensionRealm.getURLs()[0]);
+         final ExtensionDescriptor extensionDescriptor = ExtensionDescriptorCache.getInstance().read(
+            extensionRealm.getURLs()[0]);
          if (extensionDescriptor == null) {
             newRealm.importFrom(extensionRealm, "");
          }
@@ -481,16 +1234,78 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
    }
 
    private URL[] resolveURLs(MavenSession bootSession, MavenProject bootProject, Dependency extension) {
-      final ArtifactResolutionResult result = resolve(bootSession, bootProject, extension);
+      final ClasspathLockFile lockFile = this.lockFile;
+      if (lockFile == null) {
+         return toURLs(getFiles(resolve(bootSession, bootProject, extension).getArtifacts()));
+      }
 
-      final Set<Artifact> artifacts = result.getArtifacts();
+      final String lockKey = newLockKey(bootProject, extension);
 
-      final URL[] urls = new URL[artifacts.size()];
-      int i = 0;
-      for (Iterator<org.apache.maven.artifact.Artifact> it = artifacts.iterator(); it.hasNext(); i++) {
-         final org.apache.maven.artifact.Artifact artifact = it.next();
+      final List<LockedArtifact> lockedClasspath = updateLockFile ? null : lockFile.get(lockKey);
+      if (lockedClasspath != null) {
+         final List<File> files = lockFile.getFiles(lockedClasspath);
+         if (files != null) {
+            return toURLs(files);
+         }
+      }
+      else if (!updateLockFile) {
+         throw new IllegalStateException("Classpath of extension " + extension + " of project " + bootProject
+            + " is not locked in " + lockFile.getFile() + ". The lockfile must be regenerated.");
+      }
+
+      // not locked yet or locked artifacts are missing in the local repository
+      final Set<Artifact> artifacts = resolve(bootSession, bootProject, extension).getArtifacts();
+
+      final List<LockedArtifact> resolvedClasspath = new ArrayList<LockedArtifact>(artifacts.size());
+      for (Artifact artifact : artifacts) {
+         resolvedClasspath.add(lockFile.lock(artifact.getId(), artifact.getFile()));
+      }
+
+      if (updateLockFile) {
+         lockFile.put(lockKey, resolvedClasspath);
+      }
+      else if (!resolvedClasspath.equals(lockedClasspath)) {
+         throw new IllegalStateException("Resolved classpath of extension " + extension + " of project "
+            + bootProject + " differs from the classpath locked in " + lockFile.getFile()
+            + ". The lockfile must be regenerated.");
+      }
+
+      return toURLs(getFiles(artifacts));
+   }
+
+   private static String newLockKey(MavenProject bootProject, Dependency extension) {
+      // realms are shared between projects, so the key must only contain what the classpath was resolved from
+      final StringBuilder sb = new StringBuilder(128);
+      sb.append(extension.getManagementKey()).append(':').append(extension.getVersion());
+      final Set<String> exclusions = new TreeSet<String>();
+      for (Exclusion exclusion : extension.getExclusions()) {
+         exclusions.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+      }
+      for (String exclusion : exclusions) {
+         sb.append(" !").append(exclusion);
+      }
+      final List<ArtifactRepository> repositories = bootProject.getRemoteArtifactRepositories();
+      if (repositories != null) {
+         for (ArtifactRepository repository : repositories) {
+            sb.append(" @").append(repository.getId()).append('=').append(repository.getUrl());
+         }
+      }
+      return sb.toString();
+   }
+
+   private static List<File> getFiles(Collection<Artifact> artifacts) {
+      final List<File> files = new ArrayList<File>(artifacts.size());
+      for (Artifact artifact : artifacts) {
+         files.add(artifact.getFile());
+      }
+      return files;
+   }
+
+   private static URL[] toURLs(List<File> files) {
+      final URL[] urls = new URL[files.size()];
+      for (int i = 0; i < urls.length; i++) {
          try {
-            urls[i] = artifact.getFile().toURI().toURL();
+            urls[i] = files.get(i).toURI().toURL();
          }
          catch (MalformedURLException e) {
             throw new IllegalStateException(e);
@@ -499,6 +1314,26 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       return urls;
    }
 
+   /**
+    * Returns the lockfile that pins the classpaths of all extension-extensions or <code>null</code> to always resolve
+    * extension-extensions. If a lockfile is used, realms are created directly from the locked artifacts as long as they
+    * are available in the local repository and their checksums match. Returns <code>null</code> per default.
+    * 
+    * @see #isUpdateLockFile(MavenSession)
+    */
+   protected File getLockFile(MavenSession bootSession) {
+      return null;
+   }
+
+   /**
+    * Returns <code>true</code> to resolve all extension-extensions and to regenerate the lockfile from the resolved
+    * classpaths. Classpaths of extension-extensions which weren't used by the session are removed from the lockfile.
+    * Returns <code>false</code> per default.
+    */
+   protected boolean isUpdateLockFile(MavenSession bootSession) {
+      return false;
+   }
+
    private ClassRealm newRealm(ClassWorld world, String id) {
       synchronized (world) {
          String realmId = id;
@@ -522,6 +1357,11 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       }
    }
 
+   /**
+    * Returns the extension-extensions of the given boot project. May be invoked on worker threads, see
+    * {@link #addCustomClassLoaders(MavenSession, MavenProject, ClassRealm)}. Returns the extensions configured for the
+    * extension key per default.
+    */
    protected List<Dependency> getExtensionExtensions(MavenSession bootSession, MavenProject bootProject) {
       return PluginConfigurationReader.readExtensions(bootProject, extensionKey);
    }
@@ -531,9 +1371,11 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       request.setResolveRoot(true);
       request.setResolveTransitively(true);
 
+      final Set<String> coreArtifactExcludes = artifactFilterManager.getCoreArtifactExcludes();
+
       final AndArtifactFilter artifactFilter = new AndArtifactFilter();
       artifactFilter.add(new ScopeArtifactFilter(org.apache.maven.artifact.Artifact.SCOPE_RUNTIME_PLUS_SYSTEM));
-      artifactFilter.add(new ExclusionSetFilter(artifactFilterManager.getCoreArtifactExcludes()));
+      artifactFilter.add(new ExclusionSetFilter(coreArtifactExcludes));
 
       request.setResolutionFilter(artifactFilter);
       request.setCollectionFilter(artifactFilter);
@@ -557,14 +1399,21 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
 
       request.setArtifact(repositorySystem.createDependencyArtifact(dependency));
 
-      final ArtifactResolutionResult result = repositorySystem.resolve(request);
-      try {
-         resolutionErrorHandler.throwErrors(request, result);
-      }
-      catch (ArtifactResolutionException e) {
-         throw new IllegalStateException(e);
-      }
-      return result;
+      // many boot projects declare the same extension-extensions, so resolve identical requests only once per session
+      final String key = ArtifactResolutionMemo.newKey(dependency, request, coreArtifactExcludes);
+      return ArtifactResolutionMemo.get(session.getRepositorySession()).resolve(key,
+         new Callable<ArtifactResolutionResult>() {
+            public ArtifactResolutionResult call() {
+               final ArtifactResolutionResult result = repositorySystem.resolve(request);
+               try {
+                  resolutionErrorHandler.throwErrors(request, result);
+               }
+               catch (ArtifactResolutionException e) {
+                  throw new IllegalStateException(e);
+               }
+               return result;
+            }
+         });
    }
 
    private List<ClassRealm> discoverBootExtensionClassRealms(MavenProject bootProject) {
@@ -593,30 +1442,215 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       return false;
    }
 
-   private List<MavenProject> buildBootstrapProjects(MavenSession session, Collection<File> descriptors) {
+   private ProjectBuildingRequest newProjectBuildingRequest(MavenSession session) {
       final ProjectBuildingRequest request = new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
       request.setRemoteRepositories(filterArtifactRepositories(request.getRemoteRepositories()));
+      return request;
+   }
+
+   private ProjectModelCache newProjectModelCache(MavenSession session) {
+      final File modelCacheDir = getModelCacheDirectory(session);
+      return modelCacheDir == null ? null : new ProjectModelCache(modelCacheDir, getModelCacheSize(session));
+   }
+
+   private ProjectDescriptorFilter newProjectDescriptorFilter() {
+      return new ProjectDescriptorFilter(extensionKey.substring(extensionKey.indexOf(':') + 1));
+   }
+
+   private List<MavenProject> buildBootstrapProjects(MavenSession session, Collection<File> descriptors) {
+      final ProjectBuildingRequest request = newProjectBuildingRequest(session);
+      final ProjectModelCache modelCache = newProjectModelCache(session);
+
+      List<File> pomFiles = new ArrayList<File>(descriptors);
+      if (isPrefilterProjectDescriptors(session)) {
+         final ProjectDescriptorFilter filter = newProjectDescriptorFilter();
+         pomFiles = filter.filter(pomFiles);
+         logger.info("Bootstrapper pre-scan eliminated " + filter.getEliminated() + " of " + descriptors.size()
+            + " descriptors (" + filter.getScanned() + " POMs scanned)");
+      }
 
-      final List<ProjectBuildingResult> results;
+      final Map<File, MavenProject> sharedProjects = new LinkedHashMap<File, MavenProject>();
+      final MavenSession actualSession = bootToActualSession.get(session);
+      if (actualSession != null && isShareProjects(session)) {
+         shareActualProjects(actualSession, request, pomFiles, sharedProjects);
+      }
+      final boolean coalesce = actualSession != null && isCoalesceBootSessions(session);
+      if (coalesce) {
+         final ProjectSharing sharing = new ProjectSharing();
+         BootSessionCoordinator.getInstance().share(actualSession, pomFiles, request, sharing, sharedProjects);
+         if (sharing.getShared() > 0 || sharing.getRejected() > 0) {
+            logger.info("Shared " + sharing.getShared() + " projects of other bootstrappers, "
+               + sharing.getRejected() + " must be rebuilt");
+         }
+      }
+
+      final List<File> buildFiles = new ArrayList<File>(pomFiles.size());
+      for (File pomFile : pomFiles) {
+         if (!sharedProjects.containsKey(pomFile)) {
+            buildFiles.add(pomFile);
+         }
+      }
+
+      final int threads = getProjectBuilderThreads(session);
+      final ProjectReferences references = new ProjectReferences(buildFiles);
+      final long start = System.currentTimeMillis();
+      final List<MavenProject> builtProjects;
       try {
-         results = projectBuilder.build(new ArrayList<File>(descriptors), false, request);
+         builtProjects = new BootProjectBuilder(projectBuilder, repositorySystem, modelCache).build(buildFiles,
+            references, request, threads);
       }
       catch (ProjectBuildingException e) {
          throw new IllegalStateException("Cannot build bootstrapper project for " + e.getPomFile(), e);
       }
+      logger.info("Built " + builtProjects.size() + " bootstrapper projects in "
+         + (System.currentTimeMillis() - start) + " ms" + (threads < 2 ? "" : " using " + threads + " threads"));
+      for (MavenProject project : builtProjects) {
+         // participants and dependency resolution modify boot projects, so a pristine copy is kept for sharing
+         final MavenProject snapshot = ProjectSharing.copy(project);
+         snapshot.setContextValue(BUILT_AT_KEY, Long.valueOf(start));
+         snapshot.setContextValue(REQUEST_KEY, request);
+         snapshot.setContextValue(REACTOR_KEY, references);
+         project.setContextValue(SNAPSHOT_KEY, snapshot);
+      }
+      if (coalesce) {
+         BootSessionCoordinator.getInstance().register(actualSession, builtProjects, request, buildFiles, start);
+      }
+      builtProjects.addAll(sharedProjects.values());
+
+      if (modelCache != null) {
+         logger.info("Bootstrapper model cache: " + modelCache.getHits() + " hits, " + modelCache.getMisses()
+            + " misses");
+      }
+
+      return finishBootstrapProjects(builtProjects);
+   }
 
-      final List<MavenProject> projects = new ArrayList<MavenProject>(results.size());
-      for (ProjectBuildingResult result : results) {
-         final MavenProject project = result.getProject();
+   private List<MavenProject> finishBootstrapProjects(List<MavenProject> builtProjects) {
+      final List<MavenProject> projects = new ArrayList<MavenProject>(builtProjects.size());
+      for (MavenProject project : builtProjects) {
          project.setRemoteArtifactRepositories(filterArtifactRepositories(project.getRemoteArtifactRepositories()));
          project.setPluginArtifactRepositories(filterArtifactRepositories(project.getPluginArtifactRepositories()));
          projects.add(project);
       }
 
-      final ProjectSorter projectSorter;
+      return newProjectSorter(projects).getSortedProjects();
+   }
+
+   /**
+    * Returns the number of threads used to build the models of the boot projects. Descriptors are built in contiguous
+    * partitions, one per thread, and the projects are returned in descriptor order. If any partition fails, the whole
+    * boot reactor is rebuilt on a single thread to report all problems at once. Returns <code>1</code> per default.
+    */
+   protected int getProjectBuilderThreads(MavenSession bootSession) {
+      return 1;
+   }
+
+   private void shareActualProjects(MavenSession actualSession, ProjectBuildingRequest request, List<File> pomFiles,
+      Map<File, MavenProject> sharedProjects) {
+      final List<MavenProject> actualProjects = actualSession.getProjects();
+      if (actualProjects == null || actualProjects.isEmpty()) {
+         return;
+      }
+
+      final Map<File, MavenProject> fileToProject = new HashMap<File, MavenProject>();
+      for (MavenProject actualProject : actualProjects) {
+         if (actualProject.getFile() != null) {
+            fileToProject.put(actualProject.getFile().getAbsoluteFile(), actualProject);
+         }
+      }
+      final ProjectReferences actualReactor = new ProjectReferences(fileToProject.keySet());
+      final ProjectReferences bootReactor = new ProjectReferences(pomFiles);
+
+      // actual projects are built after the actual session has been started
+      final long builtAt = actualSession.getRequest().getStartTime().getTime();
+
+      final ProjectSharing sharing = new ProjectSharing();
+      for (File pomFile : pomFiles) {
+         final MavenProject actualProject = fileToProject.get(pomFile.getAbsoluteFile());
+         if (actualProject != null) {
+            final MavenProject project = sharing.share(actualProject, actualSession.getProjectBuildingRequest(),
+               actualReactor, builtAt, request, bootReactor);
+            if (project != null) {
+               sharedProjects.put(pomFile, project);
+            }
+         }
+      }
+      logger.info("Shared " + sharing.getShared() + " projects of the actual session, " + sharing.getRejected()
+         + " must be rebuilt");
+   }
+
+   /**
+    * Returns <code>true</code> if projects which are already built in the actual session should be copied into the boot
+    * session instead of being built again, if it can be proven that they would be built identically. This is only the
+    * case if the actual reactor was built before the bootstrapper is executed, e.g. in embedded or nested sessions.
+    * Returns <code>false</code> per default.
+    */
+   protected boolean isShareProjects(MavenSession bootSession) {
+      return false;
+   }
+
+   /**
+    * Returns <code>true</code> if this bootstrapper should share boot projects with other bootstrappers executed for
+    * the same actual session. Projects built by one bootstrapper are copied by following bootstrappers instead of being
+    * built again, if their descriptors, building requests and remote repositories are identical. Each bootstrapper
+    * keeps its own boot session, reactor and participants. Returns <code>false</code> per default.
+    */
+   protected boolean isCoalesceBootSessions(MavenSession bootSession) {
+      return false;
+   }
+
+   /**
+    * Returns a copy of the boot project built from the given descriptor for use in the actual session, or
+    * <code>null</code> if the project is unknown or it can't be proven that the actual session would build an identical
+    * project, e.g. because the POM has been modified in the meantime. The copy is taken from the project as it was
+    * built, before participants or dependency resolution modified it. As the reactor of the actual session isn't known
+    * yet, projects which refer to boot reactor BOMs or to reactor parents which aren't found via relative path are
+    * never shared. Allows {@link #adjustActualSession} to hand over already built models instead of building them a
+    * second time.
+    */
+   protected final MavenProject getSharedBootProject(MavenSession bootSession, MavenSession actualSession,
+      File descriptor) {
+      for (MavenProject bootProject : bootSession.getProjects()) {
+         final MavenProject snapshot = (MavenProject) bootProject.getContextValue(SNAPSHOT_KEY);
+         if (snapshot != null && descriptor.getAbsoluteFile().equals(bootProject.getFile().getAbsoluteFile())) {
+            final ProjectBuildingRequest request = actualSession.getProjectBuildingRequest();
+            final long builtAt = ((Long) snapshot.getContextValue(BUILT_AT_KEY)).longValue();
+            final MavenProject project = new ProjectSharing().share(snapshot,
+               (ProjectBuildingRequest) snapshot.getContextValue(REQUEST_KEY),
+               (ProjectReferences) snapshot.getContextValue(REACTOR_KEY), builtAt, request, null);
+            if (project == null) {
+               return null;
+            }
+            // boot projects use filtered repositories
+            try {
+               project.setRemoteArtifactRepositories(projectBuildingHelper.createArtifactRepositories(project
+                  .getModel().getRepositories(), request.getRemoteRepositories(), request));
+               project.setPluginArtifactRepositories(projectBuildingHelper.createArtifactRepositories(project
+                  .getModel().getPluginRepositories(), request.getPluginArtifactRepositories(), request));
+            }
+            catch (InvalidRepositoryException e) {
+               return null;
+            }
+            return project;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Returns <code>true</code> if descriptors should be pre-scanned to only build projects which can import the realm of
+    * this bootstrapper's extension, that is projects which, directly or via a local parent, declare a plugin or build
+    * extension with its artifact id. Eliminated projects are not part of the boot reactor, so they can't be resolved
+    * from the workspace by other boot projects. Returns <code>false</code> per default.
+    */
+   protected boolean isPrefilterProjectDescriptors(MavenSession bootSession) {
+      return false;
+   }
+
+   private static ProjectSorter newProjectSorter(List<MavenProject> projects) {
       try {
          // HACK: Constructor arg changed with Maven 3.2 from List to Collection which made it binary incompatible
-         projectSorter = (ProjectSorter) ProjectSorter.class.getConstructors()[0].newInstance(projects);
+         return (ProjectSorter) ProjectSorter.class.getConstructors()[0].newInstance(projects);
       }
       catch (InstantiationException e) {
          throw new IllegalStateException(e);
@@ -627,16 +1661,38 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       catch (InvocationTargetException e) {
          throw new IllegalStateException(e.getTargetException());
       }
+   }
 
-      return projectSorter.getSortedProjects();
+   /**
+    * Returns the directory of the on-disk cache for effective boot project models or <code>null</code> to always
+    * build boot projects from scratch. Returns <code>null</code> per default.
+    */
+   protected File getModelCacheDirectory(MavenSession bootSession) {
+      return null;
+   }
+
+   /**
+    * Returns the maximum number of models to keep in the model cache. Returns <code>1000</code> per default.
+    */
+   protected int getModelCacheSize(MavenSession bootSession) {
+      return 1000;
    }
 
    protected abstract List<ArtifactRepository> filterArtifactRepositories(List<ArtifactRepository> remoteRepositories);
 
-   private List<File> getProjectDescriptors(final MavenSession bootSession) {
+   /**
+    * Returns <code>false</code> if it is known without discovering project descriptors that this bootstrapper has
+    * nothing to do for the actual session, e.g. because a cheap marker check fails. Invoked before anything else
+    * happens, so implementations should be fast and may cache their result. Returns <code>true</code> per default.
+    */
+   protected boolean isBootstrapRequired(MavenSession actualSession) {
+      return true;
+   }
+
+   private List<File> getProjectDescriptors(final MavenSession actualSession) {
       final Collection<File> descriptors = new LinkedHashSet<File>();
       final Collection<File> skippedDescriptors = new HashSet<File>();
-      discoverProjectDescriptors(bootSession, descriptors, skippedDescriptors);
+      discoverProjectDescriptors(actualSession, descriptors, skippedDescriptors);
 
       final List<File> pomFiles = new ArrayList<File>();
       for (File descriptor : descriptors) {
@@ -649,6 +1705,32 @@ public abstract class AbstractBootstrapper implements MavenExecutionParticipant
       return pomFiles;
    }
 
+   private List<File> selectProjectDescriptors(MavenSession bootSession, List<File> pomFiles) {
+      final String baseDirectory = bootSession.getRequest().getBaseDirectory();
+      final List<File> selectedPomFiles = new ProjectSelector(baseDirectory == null ? null : new File(baseDirectory))
+         .select(pomFiles, bootSession.getRequest());
+      if (selectedPomFiles.size() < pomFiles.size()) {
+         logger.info("Trimmed bootstrapper reactor to " + selectedPomFiles.size() + " of " + pomFiles.size()
+            + " projects selected by the request");
+      }
+      return selectedPomFiles;
+   }
+
+   /**
+    * Returns <code>true</code> if the boot reactor should be trimmed to the projects selected by the actual request
+    * via <code>-pl</code>, <code>-am</code>, <code>-amd</code> and <code>-rf</code>, plus their upstream projects.
+    * Trimming happens on the raw descriptors, before any model is built. Returns <code>false</code> per default.
+    */
+   protected boolean isRespectProjectSelection(MavenSession bootSession) {
+      return false;
+   }
+
+   /**
+    * Discovers the descriptors of the projects to bootstrap. Invoked with the actual session before the boot session is
+    * created, so that a bootstrapper without projects never copies the session, or with the boot session in streaming
+    * mode. Bootstrappers which can tell even cheaper that there is nothing to do may answer
+    * {@link #isBootstrapRequired(MavenSession)} instead.
+    */
    protected abstract void discoverProjectDescriptors(MavenSession session, Collection<File> descriptors,
       Collection<File> skippedDescriptors);
 
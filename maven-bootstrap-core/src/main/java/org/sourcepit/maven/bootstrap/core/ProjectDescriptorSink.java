@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.core;
+
+import java.io.File;
+
+/**
+ * Receives project descriptors while they are discovered. Implementations are thread safe, so descriptors may be
+ * published from multiple threads.
+ */
+public interface ProjectDescriptorSink {
+   /**
+    * Publishes a discovered descriptor. Publishing the same descriptor again has no effect.
+    */
+   void add(File descriptor);
+
+   /**
+    * Marks a descriptor as skipped. It will not be bootstrapped, even if it was or will be published.
+    */
+   void skip(File descriptor);
+}
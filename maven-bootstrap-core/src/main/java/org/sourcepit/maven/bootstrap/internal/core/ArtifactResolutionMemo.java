@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Remembers the results of artifact resolutions for the lifetime of a repository session, so that identical resolution
+ * requests, e.g. for the same extension-extension declared by many boot projects, are resolved exactly once.
+ */
+public class ArtifactResolutionMemo {
+   private final ConcurrentMap<String, FutureTask<ArtifactResolutionResult>> results = new ConcurrentHashMap<String, FutureTask<ArtifactResolutionResult>>();
+
+   private final AtomicInteger resolutions = new AtomicInteger();
+
+   private final AtomicInteger savedResolutions = new AtomicInteger();
+
+   public static ArtifactResolutionMemo get(RepositorySystemSession session) {
+      // use the class as key as each extension realm may contain its own copy of this class
+      final Object key = ArtifactResolutionMemo.class;
+      final SessionData data = session.getData();
+      ArtifactResolutionMemo memo = (ArtifactResolutionMemo) data.get(key);
+      while (memo == null) {
+         data.set(key, null, new ArtifactResolutionMemo());
+         memo = (ArtifactResolutionMemo) data.get(key);
+      }
+      return memo;
+   }
+
+   public ArtifactResolutionResult resolve(String key, Callable<ArtifactResolutionResult> resolver) {
+      FutureTask<ArtifactResolutionResult> result = results.get(key);
+      if (result == null) {
+         final FutureTask<ArtifactResolutionResult> newResult = new FutureTask<ArtifactResolutionResult>(resolver);
+         result = results.putIfAbsent(key, newResult);
+         if (result == null) {
+            result = newResult;
+            resolutions.incrementAndGet();
+            newResult.run();
+         }
+         else {
+            savedResolutions.incrementAndGet();
+         }
+      }
+      else {
+         savedResolutions.incrementAndGet();
+      }
+
+      try {
+         return result.get();
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException(e);
+      }
+      catch (ExecutionException e) {
+         // don't remember failures
+         results.remove(key, result);
+         final Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new IllegalStateException(cause);
+      }
+   }
+
+   public int getResolutions() {
+      return resolutions.get();
+   }
+
+   public int getSavedResolutions() {
+      return savedResolutions.get();
+   }
+
+   /**
+    * Computes the key of a resolution request from the requested dependency, the effective remote repositories, the
+    * offline and update flags and the set of excluded artifacts.
+    */
+   public static String newKey(Dependency dependency, ArtifactResolutionRequest request, Collection<String> excludes) {
+      final StringBuilder sb = new StringBuilder(256);
+      sb.append(dependency.getManagementKey());
+      sb.append(':').append(dependency.getVersion());
+      sb.append(':').append(dependency.getScope());
+      sb.append(':').append(dependency.isOptional());
+      sb.append(':').append(dependency.getSystemPath());
+      final List<Exclusion> exclusions = dependency.getExclusions();
+      if (exclusions != null) {
+         for (Exclusion exclusion : exclusions) {
+            sb.append("!").append(exclusion.getGroupId()).append(':').append(exclusion.getArtifactId());
+         }
+      }
+      sb.append('|').append(request.isOffline());
+      sb.append('|').append(request.isForceUpdate());
+      final ArtifactRepository localRepository = request.getLocalRepository();
+      sb.append('|').append(localRepository == null ? null : localRepository.getBasedir());
+      final List<ArtifactRepository> remoteRepositories = request.getRemoteRepositories();
+      if (remoteRepositories != null) {
+         for (ArtifactRepository repository : remoteRepositories) {
+            sb.append('|').append(repository.getId()).append('=').append(repository.getUrl());
+         }
+      }
+      sb.append('|').append(excludes == null ? null : new TreeSet<String>(excludes));
+      return sb.toString();
+   }
+}
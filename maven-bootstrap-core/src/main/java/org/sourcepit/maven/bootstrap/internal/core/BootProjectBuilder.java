@@ -0,0 +1,341 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.building.StringModelSource;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingException;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.project.ProjectBuildingResult;
+import org.apache.maven.repository.RepositorySystem;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectModelCache.CachedModel;
+
+/**
+ * Builds the projects of a boot session. If a {@link ProjectModelCache} is given, effective models of unchanged POMs
+ * are taken from the cache and only the projects that miss the cache are passed to the {@link ProjectBuilder}, together
+ * with all reactor parents and BOMs they refer to, optionally in concurrent partitions.
+ */
+public class BootProjectBuilder {
+   private static final String EXTERNAL_PROFILES = "external";
+
+   private final ProjectBuilder projectBuilder;
+
+   private final RepositorySystem repositorySystem;
+
+   private final ProjectModelCache modelCache;
+
+   public BootProjectBuilder(ProjectBuilder projectBuilder, RepositorySystem repositorySystem,
+      ProjectModelCache modelCache) {
+      this.projectBuilder = projectBuilder;
+      this.repositorySystem = repositorySystem;
+      this.modelCache = modelCache;
+   }
+
+   /**
+    * Builds the projects for the given descriptors. The returned projects have the same order as their descriptors.
+    */
+   public List<MavenProject> build(List<File> descriptors, ProjectBuildingRequest request)
+      throws ProjectBuildingException {
+      return build(descriptors, request, 1);
+   }
+
+   /**
+    * Builds the projects for the given descriptors in up to <code>threads</code> concurrent partitions. The returned
+    * projects have the same order as their descriptors, regardless of the number of threads.
+    */
+   public List<MavenProject> build(List<File> descriptors, ProjectBuildingRequest request, int threads)
+      throws ProjectBuildingException {
+      return build(descriptors, new ProjectReferences(descriptors), request, threads);
+   }
+
+   /**
+    * Like {@link #build(List, ProjectBuildingRequest, int)}, but with the already known references of the descriptors.
+    */
+   public List<MavenProject> build(List<File> descriptors, ProjectReferences references,
+      ProjectBuildingRequest request, int threads) throws ProjectBuildingException {
+
+      final Map<File, MavenProject> projects = new HashMap<File, MavenProject>();
+      final Map<File, String> fingerprints = new HashMap<File, String>();
+      final Set<File> cachedPoms = new HashSet<File>();
+
+      final List<File> misses = new ArrayList<File>();
+      for (File descriptor : descriptors) {
+         final File pomFile = descriptor.getAbsoluteFile();
+         final MavenProject project = modelCache == null ? null : loadCachedProject(descriptor, request, references,
+            fingerprints);
+         if (project == null) {
+            misses.add(descriptor);
+         }
+         else {
+            projects.put(pomFile, project);
+            cachedPoms.add(pomFile);
+         }
+      }
+
+      if (!misses.isEmpty()) {
+         // reactor parents and BOMs are only visible to the POMs they are built together with, so cached POMs which are
+         // referred to by a miss are built again
+         final List<File> pomFiles = references.getClosure(misses);
+         final List<ProjectBuildingResult> results = threads < 2 || pomFiles.size() < 2 ? projectBuilder.build(
+            pomFiles, false, request) : buildPartitioned(pomFiles, references, request, threads);
+         for (ProjectBuildingResult result : results) {
+            final MavenProject project = result.getProject();
+            final File pomFile = result.getPomFile().getAbsoluteFile();
+            projects.put(pomFile, project);
+            cachedPoms.remove(pomFile);
+
+            final String fingerprint = fingerprints.get(pomFile);
+            if (fingerprint != null) {
+               modelCache.put(fingerprint, project.getModel(), getInjectedProfileIds(project));
+            }
+         }
+      }
+
+      if (modelCache != null) {
+         modelCache.trim();
+      }
+
+      final Map<Object, MavenProject> parents = new HashMap<Object, MavenProject>(projects);
+      for (File pomFile : cachedPoms) {
+         initParent(projects.get(pomFile), pomFile, references, request, parents);
+      }
+
+      final List<MavenProject> result = new ArrayList<MavenProject>(descriptors.size());
+      for (File descriptor : descriptors) {
+         final MavenProject project = projects.get(descriptor.getAbsoluteFile());
+         if (project != null) {
+            result.add(project);
+         }
+      }
+      return result;
+   }
+
+   private List<ProjectBuildingResult> buildPartitioned(final List<File> pomFiles, ProjectReferences references,
+      final ProjectBuildingRequest request, int threads) throws ProjectBuildingException {
+      final int partitions = Math.min(threads, pomFiles.size());
+      final int partitionSize = (pomFiles.size() + partitions - 1) / partitions;
+
+      final ExecutorService executor = Executors.newFixedThreadPool(partitions, new BootstrapThreadFactory(
+         "bootstrap-project-builder"));
+      try {
+         final List<Future<List<ProjectBuildingResult>>> futures =
+            new ArrayList<Future<List<ProjectBuildingResult>>>();
+         for (int from = 0; from < pomFiles.size(); from += partitionSize) {
+            final List<File> partition = pomFiles.subList(from, Math.min(from + partitionSize, pomFiles.size()));
+            // reactor parents and BOMs are only visible within a partition, so the ones of other partitions are built
+            // again as part of this partition, but only the results of the partition itself are taken
+            final List<File> closure = references.getClosure(partition);
+            futures.add(executor.submit(new Callable<List<ProjectBuildingResult>>() {
+               public List<ProjectBuildingResult> call() throws ProjectBuildingException {
+                  // the request is mutated while building, so each partition gets its own copy
+                  final List<ProjectBuildingResult> results = projectBuilder.build(closure, false,
+                     new DefaultProjectBuildingRequest(request));
+                  return closure.size() == partition.size() ? results : retain(results, partition);
+               }
+            }));
+         }
+
+         // merge in partition order
+         final List<ProjectBuildingResult> results = new ArrayList<ProjectBuildingResult>(pomFiles.size());
+         boolean failed = false;
+         for (Future<List<ProjectBuildingResult>> future : futures) {
+            try {
+               results.addAll(future.get());
+            }
+            catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new IllegalStateException(e);
+            }
+            catch (ExecutionException e) {
+               final Throwable cause = e.getCause();
+               if (cause instanceof ProjectBuildingException
+                  && ((ProjectBuildingException) cause).getResults() != null) {
+                  failed = true;
+               }
+               else if (cause instanceof RuntimeException) {
+                  throw (RuntimeException) cause;
+               }
+               else if (cause instanceof Error) {
+                  throw (Error) cause;
+               }
+               else {
+                  throw new IllegalStateException(cause);
+               }
+            }
+         }
+
+         if (failed) {
+            // to get a single exception with the problems of all projects, rebuild the whole reactor in one go
+            return projectBuilder.build(pomFiles, false, request);
+         }
+         return results;
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static List<ProjectBuildingResult> retain(List<ProjectBuildingResult> results, List<File> pomFiles) {
+      final Set<File> retainedFiles = new HashSet<File>();
+      for (File pomFile : pomFiles) {
+         retainedFiles.add(pomFile.getAbsoluteFile());
+      }
+      final List<ProjectBuildingResult> retainedResults = new ArrayList<ProjectBuildingResult>(pomFiles.size());
+      for (ProjectBuildingResult result : results) {
+         if (retainedFiles.contains(result.getPomFile().getAbsoluteFile())) {
+            retainedResults.add(result);
+         }
+      }
+      return retainedResults;
+   }
+
+   private MavenProject loadCachedProject(File pomFile, ProjectBuildingRequest request, ProjectReferences references,
+      Map<File, String> fingerprints) {
+      final String fingerprint = modelCache.fingerprint(pomFile, request, references);
+      if (fingerprint == null) {
+         return null;
+      }
+      fingerprints.put(pomFile.getAbsoluteFile(), fingerprint);
+
+      final CachedModel cachedModel = modelCache.get(fingerprint);
+      if (cachedModel == null) {
+         return null;
+      }
+
+      try {
+         return newProject(pomFile, cachedModel, request);
+      }
+      catch (ProjectBuildingException e) {
+         return null;
+      }
+   }
+
+   // lets the project builder initialize the project from the effective model, with the same state as if the project
+   // was built from its POM
+   private MavenProject newProject(File pomFile, CachedModel cachedModel, ProjectBuildingRequest request)
+      throws ProjectBuildingException {
+      final Model model = cachedModel.getModel();
+      final Parent parent = model.getParent();
+      final List<Profile> profiles = model.getProfiles();
+
+      // the model is already effective, neither the parent nor the profiles must be applied again
+      model.setParent(null);
+      model.setProfiles(new ArrayList<Profile>());
+      final StringWriter pom = new StringWriter();
+      try {
+         new MavenXpp3Writer().write(pom, model);
+      }
+      catch (IOException e) {
+         throw new IllegalStateException(e);
+      }
+
+      final ProjectBuildingResult result = projectBuilder.build(new StringModelSource(pom.toString(),
+         pomFile.getPath()), new DefaultProjectBuildingRequest(request));
+
+      final MavenProject project = result.getProject();
+      final Model effectiveModel = project.getModel();
+      effectiveModel.setParent(parent);
+      effectiveModel.setProfiles(profiles);
+      effectiveModel.setPomFile(pomFile);
+
+      project.setFile(pomFile);
+      project.setOriginalModel(ProjectModelCache.readModel(pomFile));
+      project.setProjectBuildingRequest(request);
+
+      // like the DefaultProjectBuilder, the active profiles of the POM come before the active external ones
+      final Map<String, List<String>> injectedProfileIds = cachedModel.getInjectedProfileIds();
+      final List<String> activeIds = injectedProfileIds.get(getModelId(effectiveModel));
+      final List<Profile> activeProfiles = new ArrayList<Profile>();
+      for (Profile profile : profiles) {
+         if (activeIds != null && activeIds.contains(profile.getId())) {
+            activeProfiles.add(profile);
+         }
+      }
+      activeProfiles.addAll(project.getActiveProfiles());
+      project.setActiveProfiles(activeProfiles);
+      for (Entry<String, List<String>> entry : injectedProfileIds.entrySet()) {
+         project.setInjectedProfileIds(entry.getKey(), entry.getValue());
+      }
+
+      return project;
+   }
+
+   private void initParent(MavenProject project, File pomFile, ProjectReferences references,
+      ProjectBuildingRequest request, Map<Object, MavenProject> parents) {
+      final Parent parent = project.getModel().getParent();
+      if (parent == null) {
+         return;
+      }
+      project.setParentArtifact(repositorySystem.createProjectArtifact(parent.getGroupId(), parent.getArtifactId(),
+         parent.getVersion()));
+
+      final File parentPom = references.getParentPom(pomFile);
+      if (parentPom != null) {
+         project.setParentFile(parentPom);
+      }
+
+      final Object key = parentPom == null ? parent.getId() : parentPom.getAbsoluteFile();
+      MavenProject parentProject = parents.get(key);
+      if (parentProject == null && !parents.containsKey(key)) {
+         try {
+            final ProjectBuildingRequest parentRequest = new DefaultProjectBuildingRequest(request);
+            parentProject = parentPom == null ? projectBuilder.build(project.getParentArtifact(), parentRequest)
+               .getProject() : projectBuilder.build(parentPom, parentRequest).getProject();
+         }
+         catch (ProjectBuildingException e) {
+            // like the DefaultProjectBuilder, unresolvable parents are tolerated here
+         }
+         parents.put(key, parentProject);
+      }
+      project.setParent(parentProject);
+   }
+
+   private static Map<String, List<String>> getInjectedProfileIds(MavenProject project) {
+      final Map<String, List<String>> injectedProfileIds = new LinkedHashMap<String, List<String>>(
+         project.getInjectedProfileIds());
+      // external profiles are activated again when a cached project is initialized
+      injectedProfileIds.remove(EXTERNAL_PROFILES);
+      return injectedProfileIds;
+   }
+
+   private static String getModelId(Model model) {
+      return model.getGroupId() + ":" + model.getArtifactId() + ":" + model.getVersion();
+   }
+}
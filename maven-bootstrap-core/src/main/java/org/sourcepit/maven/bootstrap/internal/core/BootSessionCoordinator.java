@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Coordinates the boot sessions of multiple bootstrappers which are executed for the same actual session. Boot projects
+ * built by one bootstrapper are registered per actual session, so that following bootstrappers with overlapping
+ * descriptors can take copies instead of building the same POMs again. Each bootstrapper still gets its own boot
+ * session and project instances, so extension keys, participants and project state stay separated.
+ * <p>
+ * Each bootstrapper lives in its own extension realm with its own copy of this class, so the registry is kept in the
+ * data of the actual repository session and consists of JDK and Maven types only.
+ */
+public class BootSessionCoordinator {
+   private static final BootSessionCoordinator INSTANCE = new BootSessionCoordinator();
+
+   private static final String REGISTRY_KEY = "org.sourcepit.maven.bootstrap.BootSessionCoordinator";
+
+   private static final String REQUEST_KEY = REGISTRY_KEY + ".request";
+
+   private static final String REPOSITORIES_KEY = REGISTRY_KEY + ".repositories";
+
+   private static final String BUILT_AT_KEY = REGISTRY_KEY + ".builtAt";
+
+   private static final String REACTOR_KEY = REGISTRY_KEY + ".reactor";
+
+   public static BootSessionCoordinator getInstance() {
+      return INSTANCE;
+   }
+
+   /**
+    * Registers pristine copies of the given boot projects for the actual session, which were built together from the
+    * given descriptors.
+    */
+   public void register(MavenSession actualSession, Collection<MavenProject> bootProjects,
+      ProjectBuildingRequest request, List<File> reactor, long builtAt) {
+      final Map<File, MavenProject> registry = getRegistry(actualSession, true);
+      if (registry == null) {
+         return;
+      }
+      final List<String> repositories = getRepositoryKeys(request);
+      for (MavenProject bootProject : bootProjects) {
+         if (bootProject.getFile() != null) {
+            // registered projects carry the state needed for sharing as context values
+            final MavenProject project = ProjectSharing.copy(bootProject);
+            project.setContextValue(REQUEST_KEY, request);
+            project.setContextValue(REPOSITORIES_KEY, repositories);
+            project.setContextValue(BUILT_AT_KEY, Long.valueOf(builtAt));
+            project.setContextValue(REACTOR_KEY, reactor);
+            registry.put(bootProject.getFile().getAbsoluteFile(), project);
+         }
+      }
+   }
+
+   /**
+    * Puts copies of all projects registered for the actual session which are identical to the projects the given
+    * descriptors would be built to into <code>sharedProjects</code>.
+    */
+   public void share(MavenSession actualSession, List<File> descriptors, ProjectBuildingRequest request,
+      ProjectSharing sharing, Map<File, MavenProject> sharedProjects) {
+      final Map<File, MavenProject> registry = getRegistry(actualSession, false);
+      if (registry == null) {
+         return;
+      }
+
+      final List<String> repositories = getRepositoryKeys(request);
+      final ProjectReferences targetReactor = new ProjectReferences(descriptors);
+      // projects registered by the same bootstrapper share their reactor
+      final Map<List<File>, ProjectReferences> sourceReactors = new IdentityHashMap<List<File>, ProjectReferences>();
+      for (File descriptor : descriptors) {
+         final MavenProject registeredProject = registry.get(descriptor.getAbsoluteFile());
+         // parents and imports may be resolved from remote repositories, which bootstrappers filter differently
+         if (registeredProject != null && repositories.equals(registeredProject.getContextValue(REPOSITORIES_KEY))) {
+            final ProjectBuildingRequest registeredRequest = (ProjectBuildingRequest) registeredProject
+               .getContextValue(REQUEST_KEY);
+            final long builtAt = ((Long) registeredProject.getContextValue(BUILT_AT_KEY)).longValue();
+            @SuppressWarnings("unchecked")
+            final List<File> reactor = (List<File>) registeredProject.getContextValue(REACTOR_KEY);
+            ProjectReferences sourceReactor = sourceReactors.get(reactor);
+            if (sourceReactor == null) {
+               sourceReactor = new ProjectReferences(reactor);
+               sourceReactors.put(reactor, sourceReactor);
+            }
+            final MavenProject project = sharing.share(registeredProject, registeredRequest, sourceReactor, builtAt,
+               request, targetReactor);
+            if (project != null) {
+               project.setContextValue(REQUEST_KEY, null);
+               project.setContextValue(REPOSITORIES_KEY, null);
+               project.setContextValue(BUILT_AT_KEY, null);
+               project.setContextValue(REACTOR_KEY, null);
+               sharedProjects.put(descriptor, project);
+            }
+         }
+      }
+   }
+
+   /**
+    * Forgets all projects registered for the actual session.
+    */
+   public void release(MavenSession actualSession) {
+      final RepositorySystemSession repositorySession = actualSession.getRepositorySession();
+      if (repositorySession != null) {
+         repositorySession.getData().set(REGISTRY_KEY, null);
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   private static Map<File, MavenProject> getRegistry(MavenSession actualSession, boolean create) {
+      final RepositorySystemSession repositorySession = actualSession.getRepositorySession();
+      if (repositorySession == null) {
+         return null;
+      }
+      final SessionData data = repositorySession.getData();
+      Map<File, MavenProject> registry = (Map<File, MavenProject>) data.get(REGISTRY_KEY);
+      while (registry == null && create) {
+         data.set(REGISTRY_KEY, null, new ConcurrentHashMap<File, MavenProject>());
+         registry = (Map<File, MavenProject>) data.get(REGISTRY_KEY);
+      }
+      return registry;
+   }
+
+   private static List<String> getRepositoryKeys(ProjectBuildingRequest request) {
+      final List<String> keys = new ArrayList<String>();
+      final List<ArtifactRepository> repositories = request.getRemoteRepositories();
+      if (repositories != null) {
+         for (ArtifactRepository repository : repositories) {
+            keys.add(repository.getId() + "=" + repository.getUrl());
+         }
+      }
+      return keys;
+   }
+}
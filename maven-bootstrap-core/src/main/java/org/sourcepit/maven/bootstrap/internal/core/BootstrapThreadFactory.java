@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that a bootstrapper which fails to shutdown its workers never keeps the Maven JVM
+ * alive.
+ */
+public class BootstrapThreadFactory implements ThreadFactory {
+   private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+   private final String namePrefix;
+
+   public BootstrapThreadFactory(String name) {
+      this.namePrefix = name + "-";
+   }
+
+   public Thread newThread(Runnable runnable) {
+      final Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+   }
+}
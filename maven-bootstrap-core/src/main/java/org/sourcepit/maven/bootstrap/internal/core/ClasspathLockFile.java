@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * A lockfile that records the exact classpaths of extension-extensions. The file consists of one section per
+ * extension-extension, keyed by its management key, version, exclusions and the remote repositories it was resolved
+ * from, each listing the artifacts of the classpath in order:
+ * 
+ * <pre>
+ * [org.example:extension:jar:1.0 !org.example:excluded @central=https://repo.maven.apache.org/maven2]
+ * org.example:extension:jar:1.0 3f7a...e1 org/example/extension/1.0/extension-1.0.jar
+ * </pre>
+ * 
+ * Paths inside the local repository are stored relative to it, so that the lockfile can be checked in.
+ */
+public class ClasspathLockFile {
+   public static final class LockedArtifact {
+      private final String coordinates;
+
+      private final String checksum;
+
+      private final String path;
+
+      public LockedArtifact(String coordinates, String checksum, String path) {
+         this.coordinates = coordinates;
+         this.checksum = checksum;
+         this.path = path;
+      }
+
+      public String getCoordinates() {
+         return coordinates;
+      }
+
+      public String getChecksum() {
+         return checksum;
+      }
+
+      public String getPath() {
+         return path;
+      }
+
+      @Override
+      public boolean equals(Object obj) {
+         if (!(obj instanceof LockedArtifact)) {
+            return false;
+         }
+         // the path may differ between machines
+         final LockedArtifact other = (LockedArtifact) obj;
+         return coordinates.equals(other.coordinates) && checksum.equals(other.checksum);
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * coordinates.hashCode() + checksum.hashCode();
+      }
+
+      @Override
+      public String toString() {
+         return coordinates + " " + checksum + " " + path;
+      }
+   }
+
+   private final File file;
+
+   private final File localRepository;
+
+   private final Map<String, List<LockedArtifact>> classpaths = Collections
+      .synchronizedMap(new TreeMap<String, List<LockedArtifact>>());
+
+   private final Set<String> usedKeys = Collections.synchronizedSet(new HashSet<String>());
+
+   private ClasspathLockFile(File file, File localRepository) {
+      this.file = file;
+      this.localRepository = localRepository;
+   }
+
+   public static ClasspathLockFile read(File file, File localRepository) {
+      final ClasspathLockFile lockFile = new ClasspathLockFile(file, localRepository);
+      if (!file.exists()) {
+         return lockFile;
+      }
+      BufferedReader reader = null;
+      try {
+         reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+         List<LockedArtifact> classpath = null;
+         String line;
+         while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+               continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+               classpath = new ArrayList<LockedArtifact>();
+               lockFile.classpaths.put(line.substring(1, line.length() - 1), classpath);
+            }
+            else {
+               final String[] segments = line.split(" ", 3);
+               if (classpath == null || segments.length != 3) {
+                  throw new IllegalStateException("Invalid line in lockfile " + file + ": " + line);
+               }
+               classpath.add(new LockedArtifact(segments[0], segments[1], segments[2]));
+            }
+         }
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Cannot read lockfile " + file, e);
+      }
+      finally {
+         IOUtil.close(reader);
+      }
+      return lockFile;
+   }
+
+   public void write() {
+      Writer writer = null;
+      try {
+         file.getAbsoluteFile().getParentFile().mkdirs();
+         writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+         writer.write("# Generated by maven-bootstrap. Do not edit.\n");
+         synchronized (classpaths) {
+            for (Entry<String, List<LockedArtifact>> entry : classpaths.entrySet()) {
+               writer.write("\n[" + entry.getKey() + "]\n");
+               for (LockedArtifact artifact : entry.getValue()) {
+                  writer.write(artifact.toString() + "\n");
+               }
+            }
+         }
+         writer.close();
+         writer = null;
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Cannot write lockfile " + file, e);
+      }
+      finally {
+         IOUtil.close(writer);
+      }
+   }
+
+   public File getFile() {
+      return file;
+   }
+
+   public List<LockedArtifact> get(String key) {
+      usedKeys.add(key);
+      return classpaths.get(key);
+   }
+
+   public void put(String key, List<LockedArtifact> classpath) {
+      usedKeys.add(key);
+      classpaths.put(key, classpath);
+   }
+
+   /**
+    * Removes the classpaths of all keys which were neither looked up nor put since this lockfile was read, e.g. of
+    * extension-extensions which are no longer used.
+    */
+   public void retainUsed() {
+      synchronized (classpaths) {
+         classpaths.keySet().retainAll(new HashSet<String>(usedKeys));
+      }
+   }
+
+   public LockedArtifact lock(String coordinates, File artifactFile) {
+      return new LockedArtifact(coordinates, checksum(artifactFile), toPath(artifactFile));
+   }
+
+   /**
+    * Returns the files of a locked classpath or <code>null</code> if at least one of the files doesn't exist yet. Throws
+    * an {@link IllegalStateException} if the checksum of an existing file doesn't match the locked checksum.
+    */
+   public List<File> getFiles(List<LockedArtifact> classpath) {
+      final List<File> files = new ArrayList<File>(classpath.size());
+      for (LockedArtifact artifact : classpath) {
+         final File artifactFile = toFile(artifact.getPath());
+         if (!artifactFile.isFile()) {
+            return null;
+         }
+         if (!artifact.getChecksum().equals(checksum(artifactFile))) {
+            throw new IllegalStateException("Checksum of " + artifactFile + " doesn't match locked checksum of "
+               + artifact.getCoordinates() + " in " + file);
+         }
+         files.add(artifactFile);
+      }
+      return files;
+   }
+
+   private String toPath(File artifactFile) {
+      final String path = artifactFile.getAbsolutePath();
+      if (localRepository != null) {
+         final String basedir = localRepository.getAbsolutePath() + File.separator;
+         if (path.startsWith(basedir)) {
+            return path.substring(basedir.length()).replace(File.separatorChar, '/');
+         }
+      }
+      return path;
+   }
+
+   private File toFile(String path) {
+      final File artifactFile = new File(path);
+      if (artifactFile.isAbsolute() || localRepository == null) {
+         return artifactFile;
+      }
+      return new File(localRepository, path.replace('/', File.separatorChar));
+   }
+
+   private static String checksum(File file) {
+      InputStream in = null;
+      try {
+         final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+         in = new DigestInputStream(new FileInputStream(file), digest);
+         final byte[] buffer = new byte[8192];
+         while (in.read(buffer) != -1) {
+         }
+         return ProjectModelCache.toHex(digest.digest());
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Cannot compute checksum of " + file, e);
+      }
+      finally {
+         IOUtil.close(in);
+      }
+   }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipFile;
+
+/**
+ * Determines whether a classpath contains component metadata, i.e. Plexus component descriptors or a Sisu index. The
+ * answer for archives is cached per artifact path, size and modification time for the lifetime of the class loader of
+ * this class. Directories are checked each time, as adding metadata files doesn't touch the directory itself.
+ */
+public final class ComponentIndex {
+   private static final String[] METADATA_PATHS = { "META-INF/plexus/components.xml", "META-INF/sisu/javax.inject.Named" };
+
+   private static final Map<String, Boolean> CACHE = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+         return size() > 1024;
+      }
+   };
+
+   private ComponentIndex() {
+      super();
+   }
+
+   /**
+    * Returns <code>true</code> if at least one of the given artifacts contains component metadata or if that can't be
+    * determined, e.g. for non-file URLs.
+    */
+   public static boolean hasComponentMetadata(URL[] urls) {
+      for (URL url : urls) {
+         if (!"file".equals(url.getProtocol()) || hasComponentMetadata(toFile(url))) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static boolean hasComponentMetadata(File file) {
+      if (file.isDirectory()) {
+         for (String path : METADATA_PATHS) {
+            if (new File(file, path).isFile()) {
+               return true;
+            }
+         }
+         return false;
+      }
+
+      final String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+      synchronized (CACHE) {
+         final Boolean cached = CACHE.get(key);
+         if (cached != null) {
+            return cached.booleanValue();
+         }
+      }
+
+      final boolean hasMetadata = readComponentMetadata(file);
+      synchronized (CACHE) {
+         CACHE.put(key, Boolean.valueOf(hasMetadata));
+      }
+      return hasMetadata;
+   }
+
+   private static boolean readComponentMetadata(File file) {
+      if (!file.isFile()) {
+         return false;
+      }
+      ZipFile zipFile = null;
+      try {
+         zipFile = new ZipFile(file);
+         for (String path : METADATA_PATHS) {
+            if (zipFile.getEntry(path) != null) {
+               return true;
+            }
+         }
+         return false;
+      }
+      catch (IOException e) {
+         // let the container decide
+         return true;
+      }
+      finally {
+         if (zipFile != null) {
+            try {
+               zipFile.close();
+            }
+            catch (IOException e) {
+               // noop
+            }
+         }
+      }
+   }
+
+   private static File toFile(URL url) {
+      try {
+         return new File(url.toURI());
+      }
+      catch (URISyntaxException e) {
+         return new File(url.getPath());
+      }
+   }
+}
@@ -17,12 +17,25 @@
 package org.sourcepit.maven.bootstrap.internal.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-public class ExtensionDescriptor {
-   private final List<String> exportedPackages = new ArrayList<String>();
+/**
+ * Immutable, so that descriptors can be cached and shared across threads and builds.
+ */
+public final class ExtensionDescriptor {
+   private final List<String> exportedPackages;
+
+   private final List<String> exportedArtifacts;
 
-   private final List<String> exportedArtifacts = new ArrayList<String>();
+   public ExtensionDescriptor() {
+      this(Collections.<String> emptyList(), Collections.<String> emptyList());
+   }
+
+   public ExtensionDescriptor(List<String> exportedPackages, List<String> exportedArtifacts) {
+      this.exportedPackages = Collections.unmodifiableList(new ArrayList<String>(exportedPackages));
+      this.exportedArtifacts = Collections.unmodifiableList(new ArrayList<String>(exportedArtifacts));
+   }
 
    public List<String> getExportedArtifacts() {
       return exportedArtifacts;
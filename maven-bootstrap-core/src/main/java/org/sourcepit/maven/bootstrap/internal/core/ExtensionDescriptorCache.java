@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded LRU cache of {@link ExtensionDescriptor}s, keyed by artifact path, size and modification time. The
+ * {@link #getInstance() shared instance} lives as long as the class loader of this class, so that long-lived Maven
+ * JVMs don't parse the descriptors of unchanged extension artifacts again for every build.
+ */
+public class ExtensionDescriptorCache {
+   private static final ExtensionDescriptorCache INSTANCE = new ExtensionDescriptorCache(256);
+
+   // marks artifacts without descriptor
+   private static final ExtensionDescriptor NO_DESCRIPTOR = new ExtensionDescriptor();
+
+   private final Map<String, ExtensionDescriptor> descriptors;
+
+   private int hits;
+
+   private int misses;
+
+   public ExtensionDescriptorCache(final int maxEntries) {
+      descriptors = new LinkedHashMap<String, ExtensionDescriptor>(16, 0.75f, true) {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, ExtensionDescriptor> eldest) {
+            return size() > maxEntries;
+         }
+      };
+   }
+
+   public static ExtensionDescriptorCache getInstance() {
+      return INSTANCE;
+   }
+
+   public ExtensionDescriptor read(URL extensionArtifact) {
+      if (!"file".equals(extensionArtifact.getProtocol())) {
+         return ExtensionDescriptorReader.read(extensionArtifact);
+      }
+      File file;
+      try {
+         file = new File(extensionArtifact.toURI());
+      }
+      catch (URISyntaxException e) {
+         file = new File(extensionArtifact.getPath());
+      }
+      return read(file);
+   }
+
+   public ExtensionDescriptor read(File extensionArtifact) {
+      final String key = newKey(extensionArtifact);
+
+      ExtensionDescriptor descriptor;
+      synchronized (descriptors) {
+         descriptor = descriptors.get(key);
+         if (descriptor != null) {
+            hits++;
+            return descriptor == NO_DESCRIPTOR ? null : descriptor;
+         }
+         misses++;
+      }
+
+      descriptor = ExtensionDescriptorReader.read(extensionArtifact);
+
+      synchronized (descriptors) {
+         descriptors.put(key, descriptor == null ? NO_DESCRIPTOR : descriptor);
+      }
+      return descriptor;
+   }
+
+   public int getHits() {
+      synchronized (descriptors) {
+         return hits;
+      }
+   }
+
+   public int getMisses() {
+      synchronized (descriptors) {
+         return misses;
+      }
+   }
+
+   private static String newKey(File extensionArtifact) {
+      // for exploded artifacts the descriptor file itself is relevant
+      final File file = extensionArtifact.isDirectory()
+         ? new File(extensionArtifact, "META-INF/maven/extension.xml")
+         : extensionArtifact;
+      return file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+   }
+}
@@ -16,76 +16,182 @@
 
 package org.sourcepit.maven.bootstrap.internal.core;
 
-import static org.sourcepit.common.utils.io.IO.buffIn;
-import static org.sourcepit.common.utils.io.IO.fileIn;
-import static org.sourcepit.common.utils.io.IO.urlIn;
-import static org.sourcepit.common.utils.io.IO.zipIn;
-import static org.sourcepit.common.utils.xml.XmlUtils.queryNodes;
-import static org.sourcepit.common.utils.xml.XmlUtils.readXml;
-
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
-import org.sourcepit.common.utils.io.IOHandle;
-import org.sourcepit.common.utils.io.IOOperation;
-import org.sourcepit.common.utils.io.handles.ZipInputStreamHandle;
-import org.sourcepit.common.utils.lang.PipedIOException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
+import org.codehaus.plexus.util.IOUtil;
 
 public class ExtensionDescriptorReader {
+   private static final String DESCRIPTOR_PATH = "META-INF/maven/extension.xml";
+
+   private static final XMLInputFactory XML_INPUT_FACTORY = newXMLInputFactory();
+
    public static ExtensionDescriptor read(URL extensionArtifact) {
-      final Document doc = readDocument(urlIn(extensionArtifact));
-      return doc == null ? null : read(doc);
-   }
+      if ("file".equals(extensionArtifact.getProtocol())) {
+         return read(toFile(extensionArtifact));
+      }
 
-   public static ExtensionDescriptor read(File extensionArtifact) {
-      final Document doc = readDocument(fileIn(extensionArtifact));
-      return doc == null ? null : read(doc);
+      // no random access possible, scan the stream for the descriptor
+      ZipInputStream zipIn = null;
+      try {
+         zipIn = new ZipInputStream(new BufferedInputStream(extensionArtifact.openStream()));
+         ZipEntry entry;
+         while ((entry = zipIn.getNextEntry()) != null) {
+            if (DESCRIPTOR_PATH.equals(entry.getName())) {
+               return read(zipIn, extensionArtifact.toString());
+            }
+         }
+         return null;
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Cannot read extension descriptor from " + extensionArtifact, e);
+      }
+      finally {
+         IOUtil.close(zipIn);
+      }
    }
 
-   private static Document readDocument(IOHandle<? extends InputStream> resource) {
-      final ZipInputStreamHandle zipIn = zipIn(buffIn(resource), "META-INF/maven/extension.xml");
-
-      final Document[] extensionDoc = new Document[1];
+   public static ExtensionDescriptor read(File extensionArtifact) {
+      if (extensionArtifact.isDirectory()) {
+         return readDirectory(extensionArtifact);
+      }
+      if (!extensionArtifact.isFile()) {
+         return null;
+      }
 
-      IOOperation<InputStream> ioop = new IOOperation<InputStream>(zipIn) {
-         @Override
-         protected void run(InputStream openResource) throws IOException {
-            extensionDoc[0] = readXml(openResource);
-         }
-      };
+      // lookup the descriptor via the central directory instead of inflating all preceding entries
+      ZipFile zipFile = null;
       try {
-         ioop.run();
+         zipFile = new ZipFile(extensionArtifact);
+         final ZipEntry entry = zipFile.getEntry(DESCRIPTOR_PATH);
+         if (entry == null) {
+            return null;
+         }
+         final InputStream in = zipFile.getInputStream(entry);
+         try {
+            return read(in, extensionArtifact.getPath());
+         }
+         finally {
+            IOUtil.close(in);
+         }
       }
-      catch (PipedIOException e) {
-         if (e.adapt(FileNotFoundException.class) == null) {
-            throw e;
+      catch (IOException e) {
+         throw new IllegalStateException("Cannot read extension descriptor from " + extensionArtifact, e);
+      }
+      finally {
+         if (zipFile != null) {
+            try {
+               zipFile.close();
+            }
+            catch (IOException e) {
+               // noop
+            }
          }
       }
+   }
 
-      return extensionDoc[0];
+   private static ExtensionDescriptor readDirectory(File directory) {
+      final File descriptorFile = new File(directory, DESCRIPTOR_PATH);
+      if (!descriptorFile.isFile()) {
+         return null;
+      }
+      InputStream in = null;
+      try {
+         in = new BufferedInputStream(new FileInputStream(descriptorFile));
+         return read(in, descriptorFile.getPath());
+      }
+      catch (IOException e) {
+         throw new IllegalStateException("Cannot read extension descriptor " + descriptorFile, e);
+      }
+      finally {
+         IOUtil.close(in);
+      }
    }
 
-   private static ExtensionDescriptor read(Document extensionDoc) {
-      final ExtensionDescriptor extensionDescriptor = new ExtensionDescriptor();
+   private static ExtensionDescriptor read(InputStream in, String location) {
+      final List<String> exportedPackages = new ArrayList<String>();
+      final List<String> exportedArtifacts = new ArrayList<String>();
+      try {
+         final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+         try {
+            final List<String> path = new ArrayList<String>(3);
+            final StringBuilder text = new StringBuilder();
+            while (reader.hasNext()) {
+               switch (reader.next()) {
+                  case XMLStreamConstants.START_ELEMENT :
+                     path.add(reader.getLocalName());
+                     text.setLength(0);
+                     break;
+                  case XMLStreamConstants.CHARACTERS :
+                  case XMLStreamConstants.CDATA :
+                     text.append(reader.getText());
+                     break;
+                  case XMLStreamConstants.END_ELEMENT :
+                     if (isPath(path, "extension", "exportedPackages", "exportedPackage")) {
+                        exportedPackages.add(text.toString().trim());
+                     }
+                     else if (isPath(path, "extension", "exportedArtifacts", "exportedArtifact")) {
+                        exportedArtifacts.add(text.toString().trim());
+                     }
+                     path.remove(path.size() - 1);
+                     text.setLength(0);
+                     break;
+                  default :
+                     break;
+               }
+            }
+         }
+         finally {
+            reader.close();
+         }
+      }
+      catch (XMLStreamException e) {
+         throw new IllegalStateException("Cannot parse extension descriptor " + location, e);
+      }
+      return new ExtensionDescriptor(exportedPackages, exportedArtifacts);
+   }
 
-      for (Node node : queryNodes(extensionDoc, "/extension/exportedPackages/exportedPackage")) {
-         final Element elem = (Element) node;
-         final String value = elem.getTextContent().trim();
-         extensionDescriptor.getExportedPackages().add(value);
+   private static boolean isPath(List<String> path, String... elements) {
+      if (path.size() != elements.length) {
+         return false;
+      }
+      for (int i = 0; i < elements.length; i++) {
+         if (!elements[i].equals(path.get(i))) {
+            return false;
+         }
       }
+      return true;
+   }
 
-      for (Node node : queryNodes(extensionDoc, "/extension/exportedArtifacts/exportedArtifact")) {
-         final Element elem = (Element) node;
-         final String value = elem.getTextContent().trim();
-         extensionDescriptor.getExportedArtifacts().add(value);
+   private static File toFile(URL url) {
+      try {
+         return new File(url.toURI());
       }
+      catch (URISyntaxException e) {
+         return new File(url.getPath());
+      }
+   }
 
-      return extensionDescriptor;
+   private static XMLInputFactory newXMLInputFactory() {
+      final XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+      return factory;
    }
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.codehaus.plexus.classworlds.realm.NoSuchRealmException;
+import org.codehaus.plexus.component.repository.ComponentDescriptor;
+
+/**
+ * Tracks the extension-extension realms used by boot sessions. Realms are identified by a key over their resolved
+ * classpath and import configuration, so that extension-extensions that are declared differently but resolve to the
+ * same classpath share one realm. When a session is released, its realms are either disposed or, if pooling is
+ * enabled, kept as idle realms in a size bounded LRU pool, so that subsequent builds in the same JVM can reuse them
+ * without creating new realms and loading classes again.
+ */
+public class ExtensionRealmPool {
+   private static final class PooledRealm {
+      final String classpathKey;
+
+      final ClassRealm realm;
+
+      PooledRealm(String classpathKey, ClassRealm realm) {
+         this.classpathKey = classpathKey;
+         this.realm = realm;
+      }
+   }
+
+   private final Map<Object, Map<String, PooledRealm>> sessionRealms = new HashMap<Object, Map<String, PooledRealm>>();
+
+   private final LinkedHashMap<String, ClassRealm> idleRealms = new LinkedHashMap<String, ClassRealm>(16, 0.75f, true);
+
+   private final Map<ClassRealm, List<ComponentDescriptor<?>>> discoveredComponents =
+      new IdentityHashMap<ClassRealm, List<ComponentDescriptor<?>>>();
+
+   // class loaders don't override equals, so weak keys are compared by identity and disposed realms aren't retained
+   private final Map<ClassRealm, Long> realmTokens = new WeakHashMap<ClassRealm, Long>();
+
+   private long nextRealmToken;
+
+   /**
+    * Returns the realm with the given id that is already in use by the session or <code>null</code>.
+    */
+   public synchronized ClassRealm get(Object session, String realmId) {
+      final Map<String, PooledRealm> realms = sessionRealms.get(session);
+      final PooledRealm pooledRealm = realms == null ? null : realms.get(realmId);
+      return pooledRealm == null ? null : pooledRealm.realm;
+   }
+
+   /**
+    * Puts a realm with the given classpath in use by the session. Realms already in use are shared, otherwise an idle
+    * realm is taken from the pool. Returns <code>null</code> if no such realm exists.
+    */
+   public synchronized ClassRealm acquire(Object session, String realmId, String classpathKey) {
+      ClassRealm realm = getRealmInUse(classpathKey);
+      if (realm == null) {
+         realm = idleRealms.remove(classpathKey);
+      }
+      if (realm != null) {
+         add(session, realmId, classpathKey, realm);
+      }
+      return realm;
+   }
+
+   private ClassRealm getRealmInUse(String classpathKey) {
+      for (Map<String, PooledRealm> realms : sessionRealms.values()) {
+         for (PooledRealm pooledRealm : realms.values()) {
+            if (pooledRealm.classpathKey.equals(classpathKey)) {
+               return pooledRealm.realm;
+            }
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Returns the number of realms the session didn't need to create because realms were shared between different
+    * extension-extension declarations.
+    */
+   public synchronized int getSharedRealmCount(Object session) {
+      final Map<String, PooledRealm> realms = sessionRealms.get(session);
+      if (realms == null) {
+         return 0;
+      }
+      return realms.size() - getUsages(realms).size();
+   }
+
+   private static Map<ClassRealm, Integer> getUsages(Map<String, PooledRealm> realms) {
+      final Map<ClassRealm, Integer> usages = new IdentityHashMap<ClassRealm, Integer>();
+      for (PooledRealm pooledRealm : realms.values()) {
+         final Integer count = usages.get(pooledRealm.realm);
+         usages.put(pooledRealm.realm, Integer.valueOf(count == null ? 1 : count.intValue() + 1));
+      }
+      return usages;
+   }
+
+   /**
+    * Computes the key of a realm from its classpath and the realm it imports extension packages from.
+    */
+   public String newClasspathKey(ClassRealm extensionRealm, URL[] urls) {
+      final StringBuilder sb = new StringBuilder();
+      // extension realms may be recreated between builds, so the identity of the extension realm is relevant too
+      sb.append(extensionRealm.getId()).append('@').append(getRealmToken(extensionRealm));
+      for (URL url : urls) {
+         sb.append('|').append(url.toExternalForm());
+      }
+      try {
+         final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+         return ProjectModelCache.toHex(digest.digest(sb.toString().getBytes("UTF-8")));
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+      catch (UnsupportedEncodingException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   // unlike identity hash codes, tokens are unique for all realms ever seen by this pool
+   private synchronized Long getRealmToken(ClassRealm realm) {
+      Long token = realmTokens.get(realm);
+      if (token == null) {
+         token = Long.valueOf(nextRealmToken++);
+         realmTokens.put(realm, token);
+      }
+      return token;
+   }
+
+   public synchronized void add(Object session, String realmId, String classpathKey, ClassRealm realm) {
+      Map<String, PooledRealm> realms = sessionRealms.get(session);
+      if (realms == null) {
+         realms = new LinkedHashMap<String, PooledRealm>();
+         sessionRealms.put(session, realms);
+      }
+      realms.put(realmId, new PooledRealm(classpathKey, realm));
+   }
+
+   /**
+    * Releases all realms in use by the session. Realms are moved into the pool of idle realms, the least recently used
+    * idle realms beyond <code>maxIdleRealms</code> are disposed.
+    */
+   public void release(Object session, int maxIdleRealms) {
+      final List<ClassRealm> disposableRealms = new ArrayList<ClassRealm>();
+      synchronized (this) {
+         final Map<String, PooledRealm> realms = sessionRealms.remove(session);
+         if (realms != null) {
+            for (PooledRealm pooledRealm : realms.values()) {
+               if (isInUse(pooledRealm.realm)) {
+                  continue;
+               }
+               final ClassRealm replacedRealm = idleRealms.put(pooledRealm.classpathKey, pooledRealm.realm);
+               if (replacedRealm != null && replacedRealm != pooledRealm.realm) {
+                  disposableRealms.add(replacedRealm);
+               }
+            }
+         }
+         final Iterator<Entry<String, ClassRealm>> it = idleRealms.entrySet().iterator();
+         while (idleRealms.size() > maxIdleRealms && it.hasNext()) {
+            disposableRealms.add(it.next().getValue());
+            it.remove();
+         }
+      }
+      for (ClassRealm realm : disposableRealms) {
+         dispose(realm);
+      }
+      synchronized (this) {
+         for (ClassRealm realm : disposableRealms) {
+            discoveredComponents.remove(realm);
+         }
+      }
+   }
+
+   /**
+    * Returns the components discovered in the given realm or <code>null</code> if components of the realm weren't
+    * discovered yet.
+    */
+   public synchronized List<ComponentDescriptor<?>> getDiscoveredComponents(ClassRealm realm) {
+      return discoveredComponents.get(realm);
+   }
+
+   public synchronized void setDiscoveredComponents(ClassRealm realm, List<ComponentDescriptor<?>> components) {
+      discoveredComponents.put(realm, components);
+   }
+
+   public synchronized int getIdleRealmCount() {
+      return idleRealms.size();
+   }
+
+   private boolean isInUse(ClassRealm realm) {
+      for (Map<String, PooledRealm> realms : sessionRealms.values()) {
+         for (PooledRealm pooledRealm : realms.values()) {
+            if (pooledRealm.realm == realm) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   private static void dispose(ClassRealm realm) {
+      try {
+         realm.getWorld().disposeRealm(realm.getId());
+      }
+      catch (NoSuchRealmException e) {
+         // already disposed
+      }
+   }
+}
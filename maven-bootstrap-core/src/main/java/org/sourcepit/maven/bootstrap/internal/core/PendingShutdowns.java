@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Tracks asynchronous shutdowns which are still running. A JVM shutdown hook awaits them as long as there is at least
+ * one pending shutdown and is removed again as soon as the last one has completed.
+ */
+public class PendingShutdowns {
+   private final Map<Thread, Long> timeouts = new LinkedHashMap<Thread, Long>();
+
+   private Thread shutdownHook;
+
+   /**
+    * Runs the given shutdown in a new thread of the given factory. The shutdown is awaited for at most
+    * <code>timeout</code> milliseconds.
+    */
+   public void start(ThreadFactory threadFactory, final Runnable shutdown, long timeout) {
+      final Thread thread = threadFactory.newThread(new Runnable() {
+         public void run() {
+            try {
+               shutdown.run();
+            }
+            finally {
+               done(Thread.currentThread());
+            }
+         }
+      });
+      synchronized (this) {
+         timeouts.put(thread, Long.valueOf(timeout));
+         if (shutdownHook == null) {
+            shutdownHook = new Thread() {
+               @Override
+               public void run() {
+                  await();
+               }
+            };
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+         }
+      }
+      thread.start();
+   }
+
+   private synchronized void done(Thread thread) {
+      timeouts.remove(thread);
+      if (timeouts.isEmpty() && shutdownHook != null) {
+         try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+         }
+         catch (IllegalStateException e) {
+            // the JVM is already shutting down and the hook is awaiting us
+         }
+         shutdownHook = null;
+      }
+   }
+
+   /**
+    * Awaits all pending shutdowns, each for at most its timeout. Returns the number of shutdowns which are still
+    * running.
+    */
+   public int await() {
+      final Map<Thread, Long> pending;
+      synchronized (this) {
+         pending = new LinkedHashMap<Thread, Long>(timeouts);
+      }
+
+      // shutdowns run concurrently, so each timeout starts now
+      final long start = System.currentTimeMillis();
+      int running = 0;
+      for (Entry<Thread, Long> entry : pending.entrySet()) {
+         final Thread thread = entry.getKey();
+         final long remaining = start + entry.getValue().longValue() - System.currentTimeMillis();
+         try {
+            thread.join(Math.max(1L, remaining));
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+         if (thread.isAlive()) {
+            running++;
+         }
+      }
+      return running;
+   }
+
+   synchronized boolean hasShutdownHook() {
+      return shutdownHook != null;
+   }
+}
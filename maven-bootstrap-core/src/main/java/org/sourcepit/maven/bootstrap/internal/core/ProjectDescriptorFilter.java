@@ -0,0 +1,261 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Cheap pre-scan of raw POMs that determines whether a project can import the realm of a build extension at all. A
+ * project is a candidate if it or one of its local parents declares a plugin or build extension with the artifact id of
+ * the extension, or if that can't be decided without building the model, e.g. for interpolated artifact ids, parents
+ * from a repository or unparsable descriptors.
+ */
+public class ProjectDescriptorFilter {
+   private static final XMLInputFactory XML_INPUT_FACTORY = newXMLInputFactory();
+
+   private final String artifactId;
+
+   private final Map<File, Boolean> candidates = new HashMap<File, Boolean>();
+
+   private int scanned, eliminated;
+
+   public ProjectDescriptorFilter(String artifactId) {
+      this.artifactId = artifactId;
+   }
+
+   public List<File> filter(List<File> descriptors) {
+      final List<File> result = new ArrayList<File>(descriptors.size());
+      for (File descriptor : descriptors) {
+         if (isCandidate(descriptor)) {
+            result.add(descriptor);
+         }
+         else {
+            eliminated++;
+         }
+      }
+      return result;
+   }
+
+   public boolean isCandidate(File descriptor) {
+      return isCandidate(descriptor.getAbsoluteFile(), new HashSet<File>());
+   }
+
+   private boolean isCandidate(File descriptor, Set<File> visited) {
+      Boolean candidate = candidates.get(descriptor);
+      if (candidate == null) {
+         if (!visited.add(descriptor)) {
+            // parent cycle, let the project builder report it
+            return true;
+         }
+         candidate = Boolean.valueOf(scan(descriptor, visited));
+         candidates.put(descriptor, candidate);
+      }
+      return candidate.booleanValue();
+   }
+
+   private boolean scan(File descriptor, Set<File> visited) {
+      scanned++;
+      final ScanResult result;
+      InputStream in = null;
+      try {
+         in = new BufferedInputStream(new FileInputStream(descriptor));
+         result = scan(in);
+      }
+      catch (IOException e) {
+         return true;
+      }
+      catch (XMLStreamException e) {
+         return true;
+      }
+      finally {
+         IOUtil.close(in);
+      }
+
+      if (result.referencesExtension) {
+         return true;
+      }
+      if (result.parentArtifactId == null) {
+         return false;
+      }
+
+      final File parentDescriptor = getParentDescriptor(descriptor, result.parentRelativePath);
+      if (parentDescriptor == null || !result.parentArtifactId.equals(readArtifactId(parentDescriptor))) {
+         // parent is resolved from a repository
+         return true;
+      }
+      return isCandidate(parentDescriptor, visited);
+   }
+
+   private ScanResult scan(InputStream in) throws XMLStreamException {
+      final ScanResult result = new ScanResult();
+      final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+      try {
+         final List<String> path = new ArrayList<String>();
+         final StringBuilder text = new StringBuilder();
+         while (reader.hasNext()) {
+            switch (reader.next()) {
+               case XMLStreamConstants.START_ELEMENT :
+                  path.add(reader.getLocalName());
+                  text.setLength(0);
+                  break;
+               case XMLStreamConstants.CHARACTERS :
+               case XMLStreamConstants.CDATA :
+                  text.append(reader.getText());
+                  break;
+               case XMLStreamConstants.END_ELEMENT :
+                  final int depth = path.size();
+                  final String element = path.get(depth - 1);
+                  final String parentElement = depth > 1 ? path.get(depth - 2) : null;
+                  if (depth == 3 && "parent".equals(parentElement)) {
+                     if ("artifactId".equals(element)) {
+                        result.parentArtifactId = text.toString().trim();
+                     }
+                     else if ("relativePath".equals(element)) {
+                        result.parentRelativePath = text.toString().trim();
+                     }
+                  }
+                  else if ("artifactId".equals(element)
+                     && ("plugin".equals(parentElement) || "extension".equals(parentElement))) {
+                     final String value = text.toString().trim();
+                     if (artifactId.equals(value) || value.indexOf("${") > -1) {
+                        // no need to read any further
+                        result.referencesExtension = true;
+                        return result;
+                     }
+                  }
+                  path.remove(depth - 1);
+                  text.setLength(0);
+                  break;
+               default :
+                  break;
+            }
+         }
+         return result;
+      }
+      finally {
+         reader.close();
+      }
+   }
+
+   private static File getParentDescriptor(File descriptor, String relativePath) {
+      if (relativePath == null) {
+         relativePath = "../pom.xml";
+      }
+      if (relativePath.length() == 0) {
+         return null;
+      }
+      File parentDescriptor = new File(descriptor.getParentFile(), relativePath);
+      if (parentDescriptor.isDirectory()) {
+         parentDescriptor = new File(parentDescriptor, "pom.xml");
+      }
+      if (!parentDescriptor.isFile()) {
+         return null;
+      }
+      try {
+         return parentDescriptor.getCanonicalFile();
+      }
+      catch (IOException e) {
+         return parentDescriptor.getAbsoluteFile();
+      }
+   }
+
+   private static String readArtifactId(File descriptor) {
+      InputStream in = null;
+      try {
+         in = new BufferedInputStream(new FileInputStream(descriptor));
+         final XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(in);
+         try {
+            int depth = 0;
+            while (reader.hasNext()) {
+               switch (reader.next()) {
+                  case XMLStreamConstants.START_ELEMENT :
+                     depth++;
+                     if (depth == 2 && "artifactId".equals(reader.getLocalName())) {
+                        return reader.getElementText().trim();
+                     }
+                     break;
+                  case XMLStreamConstants.END_ELEMENT :
+                     depth--;
+                     break;
+                  default :
+                     break;
+               }
+            }
+            return null;
+         }
+         finally {
+            reader.close();
+         }
+      }
+      catch (IOException e) {
+         return null;
+      }
+      catch (XMLStreamException e) {
+         return null;
+      }
+      finally {
+         IOUtil.close(in);
+      }
+   }
+
+   /**
+    * Returns the number of POMs read, including parents.
+    */
+   public int getScanned() {
+      return scanned;
+   }
+
+   /**
+    * Returns the number of descriptors eliminated by {@link #filter(List)}.
+    */
+   public int getEliminated() {
+      return eliminated;
+   }
+
+   private static XMLInputFactory newXMLInputFactory() {
+      final XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+      factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+      return factory;
+   }
+
+   private static final class ScanResult {
+      boolean referencesExtension;
+
+      String parentArtifactId;
+
+      String parentRelativePath;
+   }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.sourcepit.maven.bootstrap.core.ProjectDescriptorSink;
+
+/**
+ * An on-disk index of the descriptors found by a {@link ProjectDescriptorScanner}. For every walked directory the index
+ * records its modification time, the descriptors it contains and the sub directories to walk. Adding, removing or
+ * renaming an entry changes the modification time of its directory, so later scans only list the directories which
+ * changed and merely stat all others. The file consists of one tab separated line per directory:
+ * 
+ * <pre>
+ * module/nested    1398251247000    pom.xml    a/b
+ * </pre>
+ * 
+ * The first line holds the base directory and patterns the index was created for, an index for other ones is ignored.
+ */
+public class ProjectDescriptorIndex {
+   // modification times this close to the scan may still change within the file system's time granularity
+   private static final long RACY_MILLIS = 2000;
+
+   private static final String[] NO_NAMES = new String[0];
+
+   private static final class Directory {
+      final long lastModified;
+
+      final String[] descriptors;
+
+      final String[] directories;
+
+      Directory(long lastModified, String[] descriptors, String[] directories) {
+         this.lastModified = lastModified;
+         this.descriptors = descriptors;
+         this.directories = directories;
+      }
+   }
+
+   private final File file;
+
+   private final ProjectDescriptorScanner scanner;
+
+   private Map<String, Directory> directories = new HashMap<String, Directory>();
+
+   private boolean dirty;
+
+   private int revalidated;
+
+   private ProjectDescriptorIndex(File file, ProjectDescriptorScanner scanner) {
+      this.file = file;
+      this.scanner = scanner;
+   }
+
+   /**
+    * Reads the index from the file. A missing, outdated or unreadable index results in an empty index, which is
+    * populated by the next scan.
+    */
+   public static ProjectDescriptorIndex read(File file, File baseDir, ProjectDescriptorScanner scanner) {
+      final ProjectDescriptorIndex index = new ProjectDescriptorIndex(file, scanner);
+      if (!file.exists()) {
+         return index;
+      }
+      BufferedReader reader = null;
+      try {
+         reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+         if (!getKey(baseDir, scanner).equals(reader.readLine())) {
+            return index;
+         }
+         final Map<String, Directory> directories = new HashMap<String, Directory>();
+         String line;
+         while ((line = reader.readLine()) != null) {
+            final String[] segments = line.split("\t", -1);
+            if (segments.length != 4) {
+               return index;
+            }
+            final String path = segments[0].replace('/', File.separatorChar);
+            directories.put(path, new Directory(Long.parseLong(segments[1]), split(segments[2]), split(segments[3])));
+         }
+         index.directories = directories;
+      }
+      catch (IOException e) {
+         // just a cache, rebuild it
+      }
+      catch (NumberFormatException e) {
+         // just a cache, rebuild it
+      }
+      finally {
+         IOUtil.close(reader);
+      }
+      return index;
+   }
+
+   private static String getKey(File baseDir, ProjectDescriptorScanner scanner) {
+      return baseDir.getAbsolutePath() + "\t" + scanner.getPatternKey();
+   }
+
+   private static String[] split(String names) {
+      return names.length() == 0 ? NO_NAMES : names.split("/");
+   }
+
+   /**
+    * Publishes all indexed descriptors below the base directory to the sink, after listing the directories which
+    * changed since the last scan.
+    */
+   public void scan(File baseDir, ProjectDescriptorSink sink) {
+      final Map<String, Directory> walked = new HashMap<String, Directory>(directories.size());
+      scan(baseDir, "", sink, walked, System.currentTimeMillis() - RACY_MILLIS);
+      if (walked.size() != directories.size()) {
+         // directories were removed
+         dirty = true;
+      }
+      directories = walked;
+   }
+
+   private void scan(File dir, String path, ProjectDescriptorSink sink, Map<String, Directory> walked, long racy) {
+      Directory directory = directories.get(path);
+      final long lastModified = dir.lastModified();
+      if (directory == null || directory.lastModified != lastModified || lastModified == 0L) {
+         final List<String> descriptors = new ArrayList<String>();
+         final List<String> subDirectories = new ArrayList<String>();
+         if (!scanner.list(dir, path, descriptors, subDirectories)) {
+            return;
+         }
+         // never trust racy modification times, so that a change made right after this scan is noticed next time
+         directory = new Directory(lastModified >= racy ? -1L : lastModified,
+            descriptors.toArray(new String[descriptors.size()]),
+            subDirectories.toArray(new String[subDirectories.size()]));
+         dirty = true;
+         revalidated++;
+      }
+      walked.put(path, directory);
+      for (String name : directory.descriptors) {
+         sink.add(new File(dir, name));
+      }
+      for (String name : directory.directories) {
+         scan(new File(dir, name), ProjectDescriptorScanner.getChildPath(path, name), sink, walked, racy);
+      }
+   }
+
+   /**
+    * Writes the index if the last scan changed it. Returns <code>false</code> if the index couldn't be written, in
+    * which case the next scan walks the whole tree again.
+    */
+   public boolean write(File baseDir) {
+      if (!dirty) {
+         return true;
+      }
+      Writer writer = null;
+      try {
+         file.getAbsoluteFile().getParentFile().mkdirs();
+         writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+         writer.write(getKey(baseDir, scanner) + "\n");
+         for (Entry<String, Directory> entry : new TreeMap<String, Directory>(directories).entrySet()) {
+            final Directory directory = entry.getValue();
+            writer.write(entry.getKey().replace(File.separatorChar, '/'));
+            writer.write("\t" + directory.lastModified + "\t");
+            writeNames(writer, directory.descriptors);
+            writer.write("\t");
+            writeNames(writer, directory.directories);
+            writer.write("\n");
+         }
+         writer.close();
+         writer = null;
+         dirty = false;
+         return true;
+      }
+      catch (IOException e) {
+         IOUtil.close(writer);
+         writer = null;
+         // a partially written index must not be read
+         file.delete();
+         return false;
+      }
+      finally {
+         IOUtil.close(writer);
+      }
+   }
+
+   private static void writeNames(Writer writer, String[] names) throws IOException {
+      for (int i = 0; i < names.length; i++) {
+         if (i > 0) {
+            writer.write("/");
+         }
+         writer.write(names[i]);
+      }
+   }
+
+   /**
+    * Returns the number of directories which had to be listed by the last scans.
+    */
+   public int getRevalidated() {
+      return revalidated;
+   }
+
+   /**
+    * Returns the number of indexed directories.
+    */
+   public int getDirectories() {
+      return directories.size();
+   }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingException;
+import org.sourcepit.maven.bootstrap.core.ProjectDescriptorSink;
+
+/**
+ * Builds projects while their descriptors are still being discovered. Published descriptors are collected into chunks
+ * and each full chunk is pre-scanned and built on the executor, so that walking the file system and building models
+ * overlap. As Maven resolves reactor parents and imported BOMs only from the POMs built together, each chunk is built
+ * together with the reactor POMs it refers to. Chunks which refer to POMs discovered only after they were built are
+ * built again at the end. Skip decisions are honored whenever they arrive, projects of descriptors skipped after their
+ * chunk was built are dropped at the end.
+ */
+public class ProjectDescriptorPipeline implements ProjectDescriptorSink {
+   /**
+    * Builds the projects of a chunk of descriptors.
+    */
+   public interface ChunkBuilder {
+      List<MavenProject> build(List<File> descriptors) throws ProjectBuildingException;
+   }
+
+   private final ExecutorService executor;
+
+   private final int chunkSize;
+
+   private final ProjectDescriptorFilter filter;
+
+   private final ChunkBuilder builder;
+
+   private final ProjectReferences references = new ProjectReferences(Collections.<File> emptyList());
+
+   private final Set<File> descriptors = new LinkedHashSet<File>();
+
+   private final Set<File> skippedDescriptors = new HashSet<File>();
+
+   private final List<Chunk> chunks = new ArrayList<Chunk>();
+
+   private List<File> chunk = new ArrayList<File>();
+
+   /**
+    * @param executor the executor to build chunks with
+    * @param chunkSize the number of descriptors per chunk
+    * @param filter optional filter to pre-scan descriptors with, may be <code>null</code>
+    * @param builder builds the projects of a chunk
+    */
+   public ProjectDescriptorPipeline(ExecutorService executor, int chunkSize, ProjectDescriptorFilter filter,
+      ChunkBuilder builder) {
+      this.executor = executor;
+      this.chunkSize = chunkSize;
+      this.filter = filter;
+      this.builder = builder;
+   }
+
+   public void add(File descriptor) {
+      synchronized (this) {
+         if (!descriptors.add(descriptor) || skippedDescriptors.contains(descriptor)) {
+            return;
+         }
+      }
+      // read outside of the lock, so that parallel discovery isn't serialized by it
+      references.add(descriptor);
+      synchronized (this) {
+         if (!skippedDescriptors.contains(descriptor)) {
+            chunk.add(descriptor);
+            if (chunk.size() >= chunkSize) {
+               submitChunk();
+            }
+         }
+      }
+   }
+
+   public synchronized void skip(File descriptor) {
+      if (skippedDescriptors.add(descriptor)) {
+         chunk.remove(descriptor);
+      }
+   }
+
+   private void submitChunk() {
+      final Chunk newChunk = new Chunk(chunk);
+      chunk = new ArrayList<File>();
+      newChunk.submit();
+      chunks.add(newChunk);
+   }
+
+   private List<File> filter(List<File> pomFiles) {
+      if (filter == null) {
+         return pomFiles;
+      }
+      // the filter memoizes parents and is not thread safe
+      synchronized (filter) {
+         return filter.filter(pomFiles);
+      }
+   }
+
+   private boolean isCandidate(File pomFile) {
+      if (filter == null) {
+         return true;
+      }
+      synchronized (filter) {
+         return filter.isCandidate(pomFile);
+      }
+   }
+
+   /**
+    * Waits for all chunks and returns the built projects of all descriptors which weren't skipped, in order of their
+    * discovery. Chunks which refer to reactor POMs that weren't yet discovered when they were built are built again. If
+    * building any chunk failed, all descriptors are built again in one go, so that problems are reported like without
+    * streaming.
+    */
+   public List<MavenProject> finish() throws ProjectBuildingException {
+      final List<Chunk> submittedChunks;
+      synchronized (this) {
+         if (!chunk.isEmpty()) {
+            submitChunk();
+         }
+         submittedChunks = new ArrayList<Chunk>(chunks);
+      }
+
+      final Map<File, MavenProject> fileToProject = new HashMap<File, MavenProject>();
+      boolean failed = !await(submittedChunks, fileToProject);
+      if (!failed) {
+         // now that all descriptors are known, chunks may refer to reactor POMs they weren't built with
+         final List<Chunk> incompleteChunks = new ArrayList<Chunk>();
+         for (Chunk submittedChunk : submittedChunks) {
+            if (!submittedChunk.isComplete()) {
+               submittedChunk.submit();
+               incompleteChunks.add(submittedChunk);
+            }
+         }
+         failed = !await(incompleteChunks, fileToProject);
+      }
+
+      final List<File> pomFiles = getDescriptors();
+      if (failed) {
+         final List<File> candidates = new ArrayList<File>(pomFiles.size());
+         for (File pomFile : pomFiles) {
+            if (isCandidate(pomFile)) {
+               candidates.add(pomFile);
+            }
+         }
+         return builder.build(candidates);
+      }
+
+      final List<MavenProject> projects = new ArrayList<MavenProject>(fileToProject.size());
+      for (File pomFile : pomFiles) {
+         final MavenProject project = fileToProject.get(pomFile.getAbsoluteFile());
+         if (project != null) {
+            projects.add(project);
+         }
+      }
+      return projects;
+   }
+
+   // returns false if building any of the chunks failed
+   private static boolean await(List<Chunk> chunks, Map<File, MavenProject> fileToProject) {
+      boolean succeeded = true;
+      for (Chunk chunk : chunks) {
+         try {
+            for (MavenProject project : chunk.future.get()) {
+               fileToProject.put(project.getFile().getAbsoluteFile(), project);
+            }
+         }
+         catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+         }
+         catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof ProjectBuildingException) {
+               succeeded = false;
+            }
+            else if (cause instanceof RuntimeException) {
+               throw (RuntimeException) cause;
+            }
+            else if (cause instanceof Error) {
+               throw (Error) cause;
+            }
+            else {
+               throw new IllegalStateException(cause);
+            }
+         }
+      }
+      return succeeded;
+   }
+
+   /**
+    * Returns the published descriptors which weren't skipped, in order of their discovery.
+    */
+   public synchronized List<File> getDescriptors() {
+      final List<File> result = new ArrayList<File>(descriptors.size());
+      for (File descriptor : descriptors) {
+         if (!skippedDescriptors.contains(descriptor)) {
+            result.add(descriptor);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Returns the published descriptors which were skipped, in order of their discovery.
+    */
+   public synchronized List<File> getSkippedDescriptors() {
+      final List<File> result = new ArrayList<File>();
+      for (File descriptor : descriptors) {
+         if (skippedDescriptors.contains(descriptor)) {
+            result.add(descriptor);
+         }
+      }
+      return result;
+   }
+
+   private final class Chunk implements Callable<List<MavenProject>> {
+      private final List<File> pomFiles;
+
+      private volatile List<File> candidates;
+
+      private volatile List<File> closure;
+
+      Future<List<MavenProject>> future;
+
+      Chunk(List<File> pomFiles) {
+         this.pomFiles = pomFiles;
+      }
+
+      void submit() {
+         future = executor.submit(this);
+      }
+
+      public List<MavenProject> call() throws ProjectBuildingException {
+         if (candidates == null) {
+            candidates = filter(pomFiles);
+         }
+         closure = references.getClosure(candidates);
+         final List<MavenProject> projects = builder.build(closure);
+         if (closure.size() == candidates.size()) {
+            return projects;
+         }
+         // reactor POMs of other chunks are built again as part of this chunk, but only its own projects are taken
+         final Set<File> files = new HashSet<File>();
+         for (File candidate : candidates) {
+            files.add(candidate.getAbsoluteFile());
+         }
+         final List<MavenProject> result = new ArrayList<MavenProject>(candidates.size());
+         for (MavenProject project : projects) {
+            if (files.contains(project.getFile().getAbsoluteFile())) {
+               result.add(project);
+            }
+         }
+         return result;
+      }
+
+      /**
+       * Returns <code>true</code> if the chunk was built with all reactor POMs it refers to.
+       */
+      boolean isComplete() {
+         return closure.containsAll(references.getClosure(candidates));
+      }
+   }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.util.SelectorUtils;
+import org.sourcepit.maven.bootstrap.core.ProjectDescriptorSink;
+
+/**
+ * Walks a directory tree and publishes all files matching the include patterns. Directories matching an exclude pattern
+ * are pruned before they are even stat'ed, file names are checked before the file itself is touched. Patterns are Ant
+ * style and relative to the base directory. If an executor is given, sub directories are walked in parallel.
+ */
+public class ProjectDescriptorScanner {
+   public static final List<String> DEFAULT_INCLUDES = Arrays.asList("**/pom.xml");
+
+   public static final List<String> DEFAULT_EXCLUDES = Arrays.asList("**/target/**", "**/.*/**");
+
+   private final String[] includes;
+
+   private final String[] excludes;
+
+   private final Set<String> includedNames;
+
+   private final AtomicInteger scannedDirectories = new AtomicInteger();
+
+   public ProjectDescriptorScanner(List<String> includes, List<String> excludes) {
+      this.includes = normalize(includes);
+      this.excludes = normalize(excludes);
+      this.includedNames = getIncludedNames(this.includes);
+   }
+
+   private static String[] normalize(List<String> patterns) {
+      final String[] result = new String[patterns.size()];
+      for (int i = 0; i < result.length; i++) {
+         String pattern = patterns.get(i).trim().replace('\\', '/');
+         if (pattern.endsWith("/")) {
+            pattern += "**";
+         }
+         result[i] = pattern.replace('/', File.separatorChar);
+      }
+      return result;
+   }
+
+   // literal file names of the include patterns, so that most files can be rejected by name
+   private static Set<String> getIncludedNames(String[] includes) {
+      final Set<String> names = new HashSet<String>();
+      for (String include : includes) {
+         final String name = include.substring(include.lastIndexOf(File.separatorChar) + 1);
+         if (name.indexOf('*') > -1 || name.indexOf('?') > -1) {
+            return null;
+         }
+         names.add(name);
+      }
+      return names;
+   }
+
+   public void scan(File baseDir, ProjectDescriptorSink sink, ExecutorService executor) {
+      if (executor == null) {
+         scan(baseDir, "", sink, null);
+      }
+      else {
+         final Walk walk = new Walk(sink, executor);
+         walk.submit(baseDir, "");
+         walk.await();
+      }
+   }
+
+   private void scan(File dir, String path, ProjectDescriptorSink sink, Walk walk) {
+      final List<String> descriptors = new ArrayList<String>();
+      final List<String> directories = new ArrayList<String>();
+      if (!list(dir, path, descriptors, directories)) {
+         return;
+      }
+      for (String name : descriptors) {
+         sink.add(new File(dir, name));
+      }
+      for (String name : directories) {
+         final File child = new File(dir, name);
+         final String childPath = getChildPath(path, name);
+         if (walk == null) {
+            scan(child, childPath, sink, null);
+         }
+         else {
+            walk.submit(child, childPath);
+         }
+      }
+   }
+
+   /**
+    * Lists a single directory and adds the names of the included descriptors and of the sub directories to walk, both
+    * sorted by name. Returns <code>false</code> if the directory can't be listed.
+    */
+   boolean list(File dir, String path, List<String> descriptors, List<String> directories) {
+      final String[] names = dir.list();
+      if (names == null) {
+         return false;
+      }
+      scannedDirectories.incrementAndGet();
+      Arrays.sort(names);
+      for (String name : names) {
+         final String childPath = getChildPath(path, name);
+         if (isExcluded(childPath)) {
+            continue;
+         }
+         final File child = new File(dir, name);
+         if ((includedNames == null || includedNames.contains(name)) && isIncluded(childPath)) {
+            if (child.isFile()) {
+               descriptors.add(name);
+               continue;
+            }
+         }
+         if (child.isDirectory()) {
+            directories.add(name);
+         }
+      }
+      return true;
+   }
+
+   static String getChildPath(String path, String name) {
+      return path.length() == 0 ? name : path + File.separatorChar + name;
+   }
+
+   private boolean isIncluded(String path) {
+      for (String include : includes) {
+         if (SelectorUtils.matchPath(include, path)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private boolean isExcluded(String path) {
+      for (String exclude : excludes) {
+         if (SelectorUtils.matchPath(exclude, path)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Returns a key identifying the include and exclude patterns of this scanner.
+    */
+   public String getPatternKey() {
+      return Arrays.toString(includes) + Arrays.toString(excludes);
+   }
+
+   /**
+    * Returns the number of directories listed so far.
+    */
+   public int getScannedDirectories() {
+      return scannedDirectories.get();
+   }
+
+   private class Walk {
+      private final ProjectDescriptorSink sink;
+
+      private final ExecutorService executor;
+
+      private int pending;
+
+      private RuntimeException failure;
+
+      Walk(ProjectDescriptorSink sink, ExecutorService executor) {
+         this.sink = sink;
+         this.executor = executor;
+      }
+
+      void submit(final File dir, final String path) {
+         synchronized (this) {
+            if (failure != null) {
+               return;
+            }
+            pending++;
+         }
+         executor.execute(new Runnable() {
+            public void run() {
+               try {
+                  scan(dir, path, sink, Walk.this);
+               }
+               catch (RuntimeException e) {
+                  fail(e);
+               }
+               finally {
+                  done();
+               }
+            }
+         });
+      }
+
+      synchronized void fail(RuntimeException e) {
+         if (failure == null) {
+            failure = e;
+         }
+      }
+
+      synchronized void done() {
+         pending--;
+         if (pending == 0) {
+            notifyAll();
+         }
+      }
+
+      synchronized void await() {
+         while (pending > 0) {
+            try {
+               wait();
+            }
+            catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               throw new IllegalStateException(e);
+            }
+         }
+         if (failure != null) {
+            throw failure;
+         }
+      }
+   }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectSorter;
+
+/**
+ * Executes a task for each project of a sorted reactor, running at most <code>threads</code> tasks concurrently. A
+ * task for a project is started only after the tasks of all its upstream projects have finished, so dependent projects
+ * observe the same ordering as in a sequential walk over the sorted projects.
+ */
+public class ProjectGraphExecutor {
+   public interface ProjectTask {
+      void execute(MavenProject project);
+   }
+
+   private final List<MavenProject> sortedProjects;
+
+   private final Map<MavenProject, Integer> upstreamCounts = new HashMap<MavenProject, Integer>();
+
+   private final Map<MavenProject, List<MavenProject>> downstreamProjects = new HashMap<MavenProject, List<MavenProject>>();
+
+   public ProjectGraphExecutor(ProjectSorter projectSorter) {
+      sortedProjects = projectSorter.getSortedProjects();
+
+      final Map<String, MavenProject> idToProject = new LinkedHashMap<String, MavenProject>();
+      for (MavenProject project : sortedProjects) {
+         idToProject.put(ProjectSorter.getId(project), project);
+         downstreamProjects.put(project, new ArrayList<MavenProject>());
+      }
+
+      for (MavenProject project : sortedProjects) {
+         int upstreamCount = 0;
+         for (String upstreamId : projectSorter.getDependencies(ProjectSorter.getId(project))) {
+            final MavenProject upstreamProject = idToProject.get(upstreamId);
+            if (upstreamProject != null) {
+               downstreamProjects.get(upstreamProject).add(project);
+               upstreamCount++;
+            }
+         }
+         upstreamCounts.put(project, Integer.valueOf(upstreamCount));
+      }
+   }
+
+   public List<MavenProject> getSortedProjects() {
+      return sortedProjects;
+   }
+
+   public void execute(int threads, ProjectTask task) {
+      if (threads < 2) {
+         for (MavenProject project : sortedProjects) {
+            task.execute(project);
+         }
+         return;
+      }
+
+      final ExecutorService executor = Executors.newFixedThreadPool(threads, new BootstrapThreadFactory(
+         "bootstrap-project"));
+      try {
+         final CompletionService<MavenProject> completionService = new ExecutorCompletionService<MavenProject>(
+            executor);
+
+         final Map<MavenProject, Integer> pendingUpstreams = new HashMap<MavenProject, Integer>(upstreamCounts);
+
+         int running = 0;
+         for (MavenProject project : sortedProjects) {
+            if (pendingUpstreams.get(project).intValue() == 0) {
+               submit(completionService, task, project);
+               running++;
+            }
+         }
+
+         while (running > 0) {
+            final MavenProject finishedProject = completionService.take().get();
+            running--;
+
+            for (MavenProject downstreamProject : downstreamProjects.get(finishedProject)) {
+               final int pending = pendingUpstreams.get(downstreamProject).intValue() - 1;
+               pendingUpstreams.put(downstreamProject, Integer.valueOf(pending));
+               if (pending == 0) {
+                  submit(completionService, task, downstreamProject);
+                  running++;
+               }
+            }
+         }
+      }
+      catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IllegalStateException(e);
+      }
+      catch (ExecutionException e) {
+         final Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         }
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new IllegalStateException(cause);
+      }
+      finally {
+         executor.shutdownNow();
+      }
+   }
+
+   private static Future<MavenProject> submit(CompletionService<MavenProject> completionService,
+      final ProjectTask task, final MavenProject project) {
+      return completionService.submit(new Runnable() {
+         public void run() {
+            task.execute(project);
+         }
+      }, project);
+   }
+}
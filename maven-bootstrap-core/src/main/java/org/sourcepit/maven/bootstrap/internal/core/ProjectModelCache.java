@@ -0,0 +1,634 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.model.Activation;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+
+/**
+ * A size bounded, on-disk cache of effective project models. Entries are keyed by a fingerprint over the location and
+ * content of the raw POM, its parent chain, the BOMs it imports, the requested profiles, the repository configuration
+ * and all properties the POMs refer to. Parents from a repository are read from the local repository. Projects which
+ * can't be fingerprinted reliably, e.g. because they use file based profile activation, a parent snapshot from a
+ * repository or a parent which isn't downloaded yet, are never cached. Next to the model, each entry records the ids of
+ * the profiles which were active while the model was built.
+ */
+public class ProjectModelCache {
+   private static final String FORMAT_VERSION = "3";
+
+   private static final int MAX_LINEAGE = 32;
+
+   private static final String ENTRY_SUFFIX = ".pom";
+
+   private static final String PROFILES = "profiles";
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)\\}");
+
+   private static final String[] ENVIRONMENT_PROPERTIES = { "java.version", "os.name", "os.arch", "os.version",
+      "os.family", "maven.version" };
+
+   private final File directory;
+
+   private final int maxEntries;
+
+   private final AtomicInteger hits = new AtomicInteger();
+
+   private final AtomicInteger misses = new AtomicInteger();
+
+   public ProjectModelCache(File directory, int maxEntries) {
+      this.directory = directory;
+      this.maxEntries = maxEntries;
+   }
+
+   /**
+    * Returns the fingerprint of the specified POM or <code>null</code> if the effective model of the POM must not be
+    * cached.
+    */
+   public String fingerprint(File pomFile, ProjectBuildingRequest request) {
+      return fingerprint(pomFile, request, null);
+   }
+
+   /**
+    * Returns the fingerprint of the specified POM or <code>null</code> if the effective model of the POM must not be
+    * cached. Parents and BOMs which are part of the given reactor are fingerprinted as well.
+    */
+   public String fingerprint(File pomFile, ProjectBuildingRequest request, ProjectReferences reactor) {
+      return fingerprint(pomFile, request, reactor, new HashSet<File>());
+   }
+
+   private String fingerprint(File pomFile, ProjectBuildingRequest request, ProjectReferences reactor,
+      Set<File> fingerprinting) {
+      final File canonicalFile = getCanonicalFile(pomFile);
+      if (canonicalFile == null || !fingerprinting.add(canonicalFile)) {
+         return null;
+      }
+      try {
+         return fingerprint(canonicalFile, pomFile, request, reactor, fingerprinting);
+      }
+      finally {
+         fingerprinting.remove(canonicalFile);
+      }
+   }
+
+   private String fingerprint(File canonicalFile, File pomFile, ProjectBuildingRequest request,
+      ProjectReferences reactor, Set<File> fingerprinting) {
+      final MessageDigest digest = newDigest();
+      update(digest, FORMAT_VERSION);
+      // the location of a POM matters, e.g. for ${project.basedir}
+      update(digest, canonicalFile.getPath());
+
+      final Set<String> referencedProperties = new TreeSet<String>(Arrays.asList(ENVIRONMENT_PROPERTIES));
+      final List<Model> lineage = new ArrayList<Model>();
+
+      File currentPom = pomFile;
+      boolean fromRepository = false;
+      while (currentPom != null) {
+         final byte[] content = readBytes(currentPom);
+         if (content == null) {
+            return null;
+         }
+         digest.update(content);
+
+         final String text = new String(content, UTF8);
+         final Matcher matcher = EXPRESSION.matcher(text);
+         while (matcher.find()) {
+            referencedProperties.add(matcher.group(1));
+         }
+         if (referencedProperties.contains("maven.build.timestamp")) {
+            return null;
+         }
+
+         final Model rawModel = readModel(currentPom);
+         if (rawModel == null || !collectActivationProperties(rawModel, referencedProperties)) {
+            return null;
+         }
+         lineage.add(rawModel);
+         if (lineage.size() > MAX_LINEAGE) {
+            return null;
+         }
+
+         final Parent parent = rawModel.getParent();
+         if (parent == null) {
+            currentPom = null;
+         }
+         else {
+            update(digest, parent.getId());
+            if (!fromRepository) {
+               currentPom = reactor == null ? getLocalParentPom(currentPom, parent) : reactor
+                  .getParentPom(currentPom);
+            }
+            if (fromRepository || currentPom == null) {
+               if (parent.getVersion() != null && parent.getVersion().endsWith("-SNAPSHOT")) {
+                  // snapshot parent from a repository may change at any time
+                  return null;
+               }
+               // repository parents may reference properties and activate profiles too, so they are read as well
+               currentPom = getLocalRepositoryPom(request, parent.getGroupId(), parent.getArtifactId(),
+                  parent.getVersion());
+               if (currentPom == null || !currentPom.isFile()) {
+                  return null;
+               }
+               fromRepository = true;
+            }
+         }
+      }
+
+      update(digest, String.valueOf(request.getActiveProfileIds()));
+      update(digest, String.valueOf(request.getInactiveProfileIds()));
+      for (Profile profile : request.getProfiles()) {
+         final Activation activation = profile.getActivation();
+         if (activation != null && activation.getFile() != null) {
+            return null;
+         }
+         update(digest, profile.getId());
+         update(digest, String.valueOf(new TreeMap<Object, Object>(profile.getProperties())));
+         updateRepositories(digest, profile.getRepositories());
+         updateRepositories(digest, profile.getPluginRepositories());
+         if (activation != null && activation.getProperty() != null) {
+            referencedProperties.add(activation.getProperty().getName());
+         }
+      }
+
+      updateArtifactRepositories(digest, request.getRemoteRepositories());
+      updateArtifactRepositories(digest, request.getPluginArtifactRepositories());
+
+      final Properties userProperties = request.getUserProperties();
+      final Properties systemProperties = request.getSystemProperties();
+      for (String key : referencedProperties) {
+         final String value = getProperty(userProperties, systemProperties, key);
+         update(digest, key + "=" + value);
+      }
+
+      final Properties modelProperties = getModelProperties(lineage);
+      for (Model rawModel : lineage) {
+         if (!updateImports(digest, rawModel.getDependencyManagement(), modelProperties, request, reactor,
+            fingerprinting)) {
+            return null;
+         }
+         for (Profile profile : rawModel.getProfiles()) {
+            if (!updateImports(digest, profile.getDependencyManagement(), modelProperties, request, reactor,
+               fingerprinting)) {
+               return null;
+            }
+         }
+      }
+
+      return toHex(digest.digest());
+   }
+
+   // imported BOMs are fingerprinted if they are part of the reactor, snapshots from a repository by content
+   private boolean updateImports(MessageDigest digest, DependencyManagement dependencyManagement,
+      Properties modelProperties, ProjectBuildingRequest request, ProjectReferences reactor, Set<File> fingerprinting) {
+      if (dependencyManagement == null) {
+         return true;
+      }
+      for (Dependency dependency : dependencyManagement.getDependencies()) {
+         if (!"import".equals(dependency.getScope()) || !"pom".equals(dependency.getType())) {
+            continue;
+         }
+         final String groupId = interpolate(dependency.getGroupId(), modelProperties, request);
+         final String artifactId = interpolate(dependency.getArtifactId(), modelProperties, request);
+         final String version = interpolate(dependency.getVersion(), modelProperties, request);
+         if (groupId == null || artifactId == null || version == null) {
+            return false;
+         }
+         update(digest, groupId + ":" + artifactId + ":" + version);
+
+         final List<File> reactorPoms = reactor == null ? Collections.<File> emptyList() : reactor.getReactorPoms(
+            groupId, artifactId, version);
+         if (reactorPoms.size() == 1) {
+            final String fingerprint = fingerprint(reactorPoms.get(0), request, reactor, fingerprinting);
+            if (fingerprint == null) {
+               return false;
+            }
+            update(digest, fingerprint);
+         }
+         else if (reactorPoms.size() > 1) {
+            return false;
+         }
+         else if (version.endsWith("-SNAPSHOT")) {
+            final byte[] content = readLocalPom(request, groupId, artifactId, version);
+            if (content == null) {
+               return false;
+            }
+            digest.update(content);
+         }
+      }
+      return true;
+   }
+
+   private static byte[] readLocalPom(ProjectBuildingRequest request, String groupId, String artifactId,
+      String version) {
+      final File pomFile = getLocalRepositoryPom(request, groupId, artifactId, version);
+      return pomFile == null ? null : readBytes(pomFile);
+   }
+
+   private static File getLocalRepositoryPom(ProjectBuildingRequest request, String groupId, String artifactId,
+      String version) {
+      final RepositorySystemSession repositorySession = request.getRepositorySession();
+      if (repositorySession == null || repositorySession.getLocalRepositoryManager() == null || groupId == null
+         || artifactId == null || version == null) {
+         return null;
+      }
+      final LocalRepositoryManager localRepositoryManager = repositorySession.getLocalRepositoryManager();
+      final String path = localRepositoryManager.getPathForLocalArtifact(new DefaultArtifact(groupId, artifactId,
+         "pom", version));
+      return new File(localRepositoryManager.getRepository().getBasedir(), path);
+   }
+
+   // model properties of the lineage, children override their parents
+   private static Properties getModelProperties(List<Model> lineage) {
+      final Properties properties = new Properties();
+      for (int i = lineage.size() - 1; i >= 0; i--) {
+         properties.putAll(lineage.get(i).getProperties());
+      }
+      final Model model = lineage.get(0);
+      putIfNotNull(properties, "project.groupId", ProjectReferences.getGroupId(model));
+      putIfNotNull(properties, "project.artifactId", model.getArtifactId());
+      putIfNotNull(properties, "project.version", ProjectReferences.getVersion(model));
+      if (model.getParent() != null) {
+         putIfNotNull(properties, "project.parent.groupId", model.getParent().getGroupId());
+         putIfNotNull(properties, "project.parent.version", model.getParent().getVersion());
+      }
+      return properties;
+   }
+
+   private static void putIfNotNull(Properties properties, String key, String value) {
+      if (value != null) {
+         properties.setProperty(key, value);
+      }
+   }
+
+   // resolves expressions like Maven does, user properties win over model properties over system properties
+   private static String interpolate(String value, Properties modelProperties, ProjectBuildingRequest request) {
+      String result = value;
+      for (int i = 0; result != null && result.indexOf("${") > -1; i++) {
+         if (i > MAX_LINEAGE) {
+            return null;
+         }
+         final Matcher matcher = EXPRESSION.matcher(result);
+         final StringBuffer sb = new StringBuffer();
+         while (matcher.find()) {
+            final String key = matcher.group(1);
+            String replacement = request.getUserProperties() == null ? null : request.getUserProperties().getProperty(
+               key);
+            if (replacement == null) {
+               replacement = modelProperties.getProperty(key);
+            }
+            if (replacement == null && request.getSystemProperties() != null) {
+               replacement = request.getSystemProperties().getProperty(key);
+            }
+            if (replacement == null) {
+               return null;
+            }
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+         }
+         matcher.appendTail(sb);
+         result = sb.toString();
+      }
+      return result;
+   }
+
+   private static void updateRepositories(MessageDigest digest, List<Repository> repositories) {
+      for (Repository repository : repositories) {
+         update(digest, repository.getId() + "=" + repository.getUrl());
+      }
+   }
+
+   private static void updateArtifactRepositories(MessageDigest digest, List<ArtifactRepository> repositories) {
+      if (repositories != null) {
+         for (ArtifactRepository repository : repositories) {
+            update(digest, repository.getId() + "=" + repository.getUrl());
+         }
+      }
+   }
+
+   private static File getCanonicalFile(File file) {
+      try {
+         return file.getCanonicalFile();
+      }
+      catch (IOException e) {
+         return null;
+      }
+   }
+
+   /**
+    * Returns the latest modification time of the specified POM and its local parent chain.
+    */
+   public static long getLastModified(File pomFile) {
+      long lastModified = 0L;
+      final Set<File> visited = new HashSet<File>();
+      File currentPom = pomFile.getAbsoluteFile();
+      while (currentPom != null && visited.add(currentPom)) {
+         lastModified = Math.max(lastModified, currentPom.lastModified());
+         final Model rawModel = readModel(currentPom);
+         final Parent parent = rawModel == null ? null : rawModel.getParent();
+         currentPom = parent == null ? null : getLocalParentPom(currentPom, parent);
+         if (currentPom != null) {
+            currentPom = currentPom.getAbsoluteFile();
+         }
+      }
+      return lastModified;
+   }
+
+   public CachedModel get(String fingerprint) {
+      final File entry = new File(directory, fingerprint + ENTRY_SUFFIX);
+      final CachedModel cachedModel = entry.isFile() ? readEntry(entry) : null;
+      if (cachedModel == null) {
+         misses.incrementAndGet();
+      }
+      else {
+         hits.incrementAndGet();
+         // keep track of recently used entries for eviction
+         entry.setLastModified(System.currentTimeMillis());
+      }
+      return cachedModel;
+   }
+
+   /**
+    * Puts the given effective model into the cache. The injected profile ids map the ids of the models of the project
+    * lineage to the ids of their profiles which were active.
+    */
+   public void put(String fingerprint, Model model, Map<String, List<String>> injectedProfileIds) {
+      if (!directory.exists() && !directory.mkdirs()) {
+         return;
+      }
+      final File entry = new File(directory, fingerprint + ENTRY_SUFFIX);
+      final File tmp = new File(directory, fingerprint + ".tmp");
+      OutputStream out = null;
+      try {
+         out = new BufferedOutputStream(new FileOutputStream(tmp));
+         // header lines with the active profiles, terminated by an empty line
+         for (Entry<String, List<String>> profileIds : injectedProfileIds.entrySet()) {
+            final String line = PROFILES + "\t" + profileIds.getKey() + "\t" + join(profileIds.getValue()) + "\n";
+            out.write(line.getBytes(UTF8));
+         }
+         out.write('\n');
+         new MavenXpp3Writer().write(out, model);
+         out.close();
+         out = null;
+         // publish the entry atomically to never read half written models
+         if (!tmp.renameTo(entry)) {
+            entry.delete();
+            tmp.renameTo(entry);
+         }
+      }
+      catch (IOException e) {
+         tmp.delete();
+      }
+      finally {
+         IOUtil.close(out);
+      }
+   }
+
+   private static CachedModel readEntry(File entry) {
+      final byte[] content = readBytes(entry);
+      if (content == null) {
+         return null;
+      }
+      int offset = 0;
+      final Map<String, List<String>> injectedProfileIds = new LinkedHashMap<String, List<String>>();
+      while (true) {
+         int end = offset;
+         while (end < content.length && content[end] != '\n') {
+            end++;
+         }
+         if (end == content.length) {
+            return null;
+         }
+         final String line = new String(content, offset, end - offset, UTF8);
+         offset = end + 1;
+         if (line.length() == 0) {
+            break;
+         }
+         final String[] segments = line.split("\t", -1);
+         if (segments.length != 3 || !PROFILES.equals(segments[0])) {
+            return null;
+         }
+         injectedProfileIds.put(segments[1], split(segments[2]));
+      }
+      try {
+         final Model model = new MavenXpp3Reader().read(new ByteArrayInputStream(content, offset, content.length
+            - offset), false);
+         return new CachedModel(model, injectedProfileIds);
+      }
+      catch (IOException e) {
+         return null;
+      }
+      catch (XmlPullParserException e) {
+         return null;
+      }
+   }
+
+   private static String join(List<String> values) {
+      final StringBuilder sb = new StringBuilder();
+      for (String value : values) {
+         if (sb.length() > 0) {
+            sb.append(',');
+         }
+         sb.append(value);
+      }
+      return sb.toString();
+   }
+
+   private static List<String> split(String values) {
+      return values.length() == 0 ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(values.split(",")));
+   }
+
+   /**
+    * Evicts least recently used entries until the cache contains no more than <code>maxEntries</code> entries.
+    */
+   public void trim() {
+      final File[] entries = directory.listFiles();
+      if (entries == null || entries.length <= maxEntries) {
+         return;
+      }
+      final List<File> models = new ArrayList<File>();
+      for (File entry : entries) {
+         if (entry.getName().endsWith(ENTRY_SUFFIX)) {
+            models.add(entry);
+         }
+      }
+      Collections.sort(models, new Comparator<File>() {
+         public int compare(File f1, File f2) {
+            final long m1 = f1.lastModified();
+            final long m2 = f2.lastModified();
+            return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+         }
+      });
+      for (int i = 0; i < models.size() - maxEntries; i++) {
+         models.get(i).delete();
+      }
+   }
+
+   public int getHits() {
+      return hits.get();
+   }
+
+   public int getMisses() {
+      return misses.get();
+   }
+
+   private static boolean collectActivationProperties(Model rawModel, Set<String> referencedProperties) {
+      for (Profile profile : rawModel.getProfiles()) {
+         final Activation activation = profile.getActivation();
+         if (activation != null) {
+            if (activation.getFile() != null) {
+               return false;
+            }
+            if (activation.getProperty() != null) {
+               referencedProperties.add(activation.getProperty().getName());
+            }
+         }
+      }
+      return true;
+   }
+
+   private static File getLocalParentPom(File pomFile, Parent parent) {
+      final File parentPom = ProjectReferences.getRelativeParentPom(pomFile, parent.getRelativePath());
+      return parentPom != null && ProjectReferences.matches(parent, readModel(parentPom)) ? parentPom : null;
+   }
+
+   private static String getProperty(Properties userProperties, Properties systemProperties, String key) {
+      String value = userProperties == null ? null : userProperties.getProperty(key);
+      if (value == null && systemProperties != null) {
+         value = systemProperties.getProperty(key);
+      }
+      return value;
+   }
+
+   static Model readModel(File pomFile) {
+      InputStream in = null;
+      try {
+         in = new BufferedInputStream(new FileInputStream(pomFile));
+         return new MavenXpp3Reader().read(in, false);
+      }
+      catch (IOException e) {
+         return null;
+      }
+      catch (XmlPullParserException e) {
+         return null;
+      }
+      finally {
+         IOUtil.close(in);
+      }
+   }
+
+   private static byte[] readBytes(File file) {
+      InputStream in = null;
+      try {
+         in = new FileInputStream(file);
+         return IOUtil.toByteArray(in);
+      }
+      catch (IOException e) {
+         return null;
+      }
+      finally {
+         IOUtil.close(in);
+      }
+   }
+
+   private static MessageDigest newDigest() {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException(e);
+      }
+   }
+
+   private static void update(MessageDigest digest, String value) {
+      digest.update(String.valueOf(value).getBytes(UTF8));
+      digest.update((byte) 0);
+   }
+
+   static String toHex(byte[] bytes) {
+      final StringBuilder sb = new StringBuilder(bytes.length * 2);
+      for (byte b : bytes) {
+         sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+         sb.append(Character.forDigit(b & 0xf, 16));
+      }
+      return sb.toString();
+   }
+
+   /**
+    * An effective model from the cache together with the ids of the profiles which were active while it was built.
+    */
+   public static class CachedModel {
+      private final Model model;
+
+      private final Map<String, List<String>> injectedProfileIds;
+
+      CachedModel(Model model, Map<String, List<String>> injectedProfileIds) {
+         this.model = model;
+         this.injectedProfileIds = injectedProfileIds;
+      }
+
+      public Model getModel() {
+         return model;
+      }
+
+      public Map<String, List<String>> getInjectedProfileIds() {
+         return injectedProfileIds;
+      }
+   }
+}
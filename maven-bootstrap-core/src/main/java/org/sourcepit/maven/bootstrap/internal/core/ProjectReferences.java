@@ -0,0 +1,248 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Profile;
+
+/**
+ * Knows which reactor POMs a POM refers to, i.e. its parents and the BOMs it imports. Maven resolves reactor parents
+ * and imported BOMs only from the POMs that are built together, so a POM must never be built without the reactor POMs
+ * it refers to. Coordinates which contain expressions are matched conservatively, so that a closure may contain more
+ * POMs than actually needed but never less.
+ */
+public class ProjectReferences {
+   private final Map<File, Model> models = new HashMap<File, Model>();
+
+   private final Map<File, File> descriptors = new LinkedHashMap<File, File>();
+
+   private final Map<String, List<File>> descriptorsByArtifactId = new HashMap<String, List<File>>();
+
+   public ProjectReferences(Collection<File> descriptors) {
+      for (File descriptor : descriptors) {
+         add(descriptor);
+      }
+   }
+
+   public synchronized void add(File descriptor) {
+      final File pomFile = normalize(descriptor);
+      if (descriptors.containsKey(pomFile)) {
+         return;
+      }
+      descriptors.put(pomFile, descriptor);
+
+      final Model model = getModel(pomFile);
+      final String artifactId = model == null ? null : model.getArtifactId();
+      List<File> files = descriptorsByArtifactId.get(artifactId);
+      if (files == null) {
+         files = new ArrayList<File>(1);
+         descriptorsByArtifactId.put(artifactId, files);
+      }
+      files.add(pomFile);
+   }
+
+   /**
+    * Returns the parent POM of the specified POM, either found via relative path or in the reactor, or
+    * <code>null</code> if the parent must be resolved from a repository.
+    */
+   public synchronized File getParentPom(File pomFile) {
+      final Model model = getModel(normalize(pomFile));
+      final Parent parent = model == null ? null : model.getParent();
+      if (parent == null) {
+         return null;
+      }
+      final File parentPom = getRelativeParentPom(pomFile, parent);
+      if (parentPom != null) {
+         final File descriptor = descriptors.get(parentPom);
+         return descriptor == null ? parentPom : descriptor;
+      }
+      final List<File> reactorPoms = findReactorPoms(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+      return reactorPoms.isEmpty() ? null : descriptors.get(reactorPoms.get(0));
+   }
+
+   /**
+    * Returns all reactor POMs which may have the specified coordinates.
+    */
+   public synchronized List<File> getReactorPoms(String groupId, String artifactId, String version) {
+      final List<File> result = new ArrayList<File>();
+      for (File pomFile : findReactorPoms(groupId, artifactId, version)) {
+         result.add(descriptors.get(pomFile));
+      }
+      return result;
+   }
+
+   /**
+    * Returns the given POMs together with all reactor POMs they refer to directly or transitively, in reactor order.
+    */
+   public synchronized List<File> getClosure(Collection<File> pomFiles) {
+      final Set<File> closure = new LinkedHashSet<File>();
+      final List<File> queue = new ArrayList<File>();
+      for (File pomFile : pomFiles) {
+         queue.add(normalize(pomFile));
+      }
+      while (!queue.isEmpty()) {
+         final File pomFile = queue.remove(queue.size() - 1);
+         if (closure.add(pomFile)) {
+            queue.addAll(getReferencedReactorPoms(pomFile));
+         }
+      }
+
+      // parents outside of the reactor are only walked through
+      final List<File> result = new ArrayList<File>(closure.size());
+      for (Map.Entry<File, File> entry : descriptors.entrySet()) {
+         if (closure.contains(entry.getKey())) {
+            result.add(entry.getValue());
+         }
+      }
+      return result;
+   }
+
+   private List<File> getReferencedReactorPoms(File pomFile) {
+      final Model model = getModel(pomFile);
+      if (model == null) {
+         return Collections.emptyList();
+      }
+
+      final List<File> references = new ArrayList<File>();
+      final Parent parent = model.getParent();
+      if (parent != null) {
+         final File parentPom = getRelativeParentPom(pomFile, parent);
+         if (parentPom == null) {
+            references.addAll(findReactorPoms(parent.getGroupId(), parent.getArtifactId(), parent.getVersion()));
+         }
+         else {
+            // a parent outside of the reactor may still have a parent or imports within the reactor
+            references.add(parentPom);
+         }
+      }
+
+      addImports(model.getDependencyManagement(), references);
+      for (Profile profile : model.getProfiles()) {
+         // profile activation is unknown here, so all profiles are taken into account
+         addImports(profile.getDependencyManagement(), references);
+      }
+      return references;
+   }
+
+   private void addImports(DependencyManagement dependencyManagement, List<File> references) {
+      if (dependencyManagement != null) {
+         for (Dependency dependency : dependencyManagement.getDependencies()) {
+            if ("import".equals(dependency.getScope()) && "pom".equals(dependency.getType())) {
+               references.addAll(findReactorPoms(dependency.getGroupId(), dependency.getArtifactId(),
+                  dependency.getVersion()));
+            }
+         }
+      }
+   }
+
+   private List<File> findReactorPoms(String groupId, String artifactId, String version) {
+      if (artifactId == null || isExpression(artifactId)) {
+         return new ArrayList<File>(descriptors.keySet());
+      }
+      final List<File> candidates = descriptorsByArtifactId.get(artifactId);
+      if (candidates == null) {
+         return Collections.emptyList();
+      }
+      final List<File> result = new ArrayList<File>(candidates.size());
+      for (File candidate : candidates) {
+         final Model model = getModel(candidate);
+         if (matches(groupId, getGroupId(model)) && matches(version, getVersion(model))) {
+            result.add(candidate);
+         }
+      }
+      return result;
+   }
+
+   private static boolean matches(String expected, String actual) {
+      return expected == null || actual == null || isExpression(expected) || isExpression(actual)
+         || expected.equals(actual);
+   }
+
+   private static boolean isExpression(String value) {
+      return value.indexOf("${") > -1;
+   }
+
+   private File getRelativeParentPom(File pomFile, Parent parent) {
+      final File parentPom = getRelativeParentPom(pomFile, parent.getRelativePath());
+      return parentPom != null && matches(parent, getModel(parentPom)) ? parentPom : null;
+   }
+
+   static File getRelativeParentPom(File pomFile, String relativePath) {
+      if (relativePath == null || relativePath.length() == 0) {
+         return null;
+      }
+      File parentPom = new File(pomFile.getAbsoluteFile().getParentFile(), relativePath);
+      if (parentPom.isDirectory()) {
+         parentPom = new File(parentPom, "pom.xml");
+      }
+      return parentPom.isFile() ? normalize(parentPom) : null;
+   }
+
+   // absolute and without . or .. segments, but unlike canonical files without touching the file system
+   private static File normalize(File file) {
+      return new File(file.getAbsoluteFile().toURI().normalize());
+   }
+
+   /**
+    * Returns <code>true</code> if the given raw model has the coordinates of the given parent, like Maven requires it
+    * for parents found via relative path.
+    */
+   static boolean matches(Parent parent, Model model) {
+      return model != null && String.valueOf(parent.getArtifactId()).equals(model.getArtifactId())
+         && String.valueOf(parent.getGroupId()).equals(getGroupId(model))
+         && String.valueOf(parent.getVersion()).equals(getVersion(model));
+   }
+
+   static String getGroupId(Model model) {
+      if (model == null) {
+         return null;
+      }
+      return model.getGroupId() == null && model.getParent() != null ? model.getParent().getGroupId() : model
+         .getGroupId();
+   }
+
+   static String getVersion(Model model) {
+      if (model == null) {
+         return null;
+      }
+      return model.getVersion() == null && model.getParent() != null ? model.getParent().getVersion() : model
+         .getVersion();
+   }
+
+   private Model getModel(File pomFile) {
+      if (models.containsKey(pomFile)) {
+         return models.get(pomFile);
+      }
+      final Model model = ProjectModelCache.readModel(pomFile);
+      models.put(pomFile, model);
+      return model;
+   }
+}
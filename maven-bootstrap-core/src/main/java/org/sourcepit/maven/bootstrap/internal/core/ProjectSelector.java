@@ -0,0 +1,386 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.model.BuildBase;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Extension;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.ModelBase;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.Profile;
+
+/**
+ * Trims project descriptors to the projects selected by a Maven execution request (<code>-pl</code>, <code>-am</code>,
+ * <code>-amd</code> and <code>-rf</code>) plus their upstream projects. Works on raw POMs, so no model is built for
+ * projects which are trimmed. Selection follows the rules of Maven's graph builder. Coordinates are taken from the raw
+ * POMs, interpolating only <code>project.*</code> and properties declared in the POM itself. References in profiles
+ * count regardless of their activation. If a selector doesn't match or a coordinate can't be determined, nothing is
+ * trimmed.
+ */
+public class ProjectSelector {
+   private final File reactorDirectory;
+
+   private final Map<File, Node> nodes = new HashMap<File, Node>();
+
+   private final Map<String, Node> keyToNode = new HashMap<String, Node>();
+
+   private final List<Node> order = new ArrayList<Node>();
+
+   public ProjectSelector(File reactorDirectory) {
+      this.reactorDirectory = reactorDirectory;
+   }
+
+   /**
+    * Returns the descriptors of the selected projects and their upstream projects in their original order or the given
+    * descriptors if the request doesn't select projects or the selection can't be determined.
+    */
+   public List<File> select(List<File> descriptors, MavenExecutionRequest request) {
+      final List<String> selectors = getIncludeSelectors(request.getSelectedProjects());
+      final String resumeFrom = request.getResumeFrom();
+      if (selectors.isEmpty() && (resumeFrom == null || resumeFrom.length() == 0)) {
+         return descriptors;
+      }
+
+      if (!index(descriptors)) {
+         return descriptors;
+      }
+
+      Collection<Node> selected;
+      if (selectors.isEmpty()) {
+         selected = new LinkedHashSet<Node>(order);
+      }
+      else {
+         selected = new LinkedHashSet<Node>();
+         for (String selector : selectors) {
+            final Node node = findNode(selector);
+            if (node == null) {
+               return descriptors;
+            }
+            selected.add(node);
+         }
+      }
+
+      final String makeBehavior = request.getMakeBehavior();
+      if (MavenExecutionRequest.REACTOR_MAKE_DOWNSTREAM.equals(makeBehavior)
+         || MavenExecutionRequest.REACTOR_MAKE_BOTH.equals(makeBehavior)) {
+         selected = addDownstream(selected);
+      }
+
+      if (resumeFrom != null && resumeFrom.length() > 0) {
+         final Node resumeNode = findNode(resumeFrom);
+         if (resumeNode == null) {
+            return descriptors;
+         }
+         final Set<Node> resumed = new LinkedHashSet<Node>();
+         for (Node node : order.subList(order.indexOf(resumeNode), order.size())) {
+            if (selected.contains(node)) {
+               resumed.add(node);
+            }
+         }
+         selected = resumed;
+      }
+
+      // upstream projects are always needed to resolve the selected projects from the boot reactor
+      final Set<Node> closure = new LinkedHashSet<Node>();
+      for (Node node : selected) {
+         addUpstream(node, closure);
+      }
+
+      final List<File> result = new ArrayList<File>(closure.size());
+      for (File descriptor : descriptors) {
+         if (closure.contains(nodes.get(descriptor))) {
+            result.add(descriptor);
+         }
+      }
+      return result;
+   }
+
+   private static List<String> getIncludeSelectors(List<String> selectedProjects) {
+      final List<String> selectors = new ArrayList<String>();
+      if (selectedProjects != null) {
+         for (String selector : selectedProjects) {
+            // exclusions only make the selection smaller, so ignoring them is safe
+            if (!selector.startsWith("!") && !selector.startsWith("-")) {
+               selectors.add(selector.startsWith("+") ? selector.substring(1) : selector);
+            }
+         }
+      }
+      return selectors;
+   }
+
+   private boolean index(List<File> descriptors) {
+      for (File descriptor : descriptors) {
+         final Model model = ProjectModelCache.readModel(descriptor);
+         if (model == null) {
+            return false;
+         }
+         final Node node = new Node(descriptor, model);
+         if (node.key == null) {
+            return false;
+         }
+         nodes.put(descriptor, node);
+         keyToNode.put(node.key, node);
+      }
+      for (Node node : nodes.values()) {
+         final List<String> upstreamKeys = node.getUpstreamKeys();
+         if (upstreamKeys == null) {
+            return false;
+         }
+         for (String upstreamKey : upstreamKeys) {
+            final Node upstream = keyToNode.get(upstreamKey);
+            if (upstream != null && upstream != node) {
+               node.upstream.add(upstream);
+               upstream.downstream.add(node);
+            }
+         }
+      }
+
+      // reactor order, like the project sorter a depth first topological sort in descriptor order
+      final Set<Node> visited = new LinkedHashSet<Node>();
+      for (File descriptor : descriptors) {
+         sort(nodes.get(descriptor), visited);
+      }
+      return true;
+   }
+
+   private void sort(Node node, Set<Node> visited) {
+      if (visited.add(node)) {
+         for (Node upstream : node.upstream) {
+            sort(upstream, visited);
+         }
+         order.add(node);
+      }
+   }
+
+   private Node findNode(String selector) {
+      for (Node node : order) {
+         if (isMatchingProject(node, selector)) {
+            return node;
+         }
+      }
+      return null;
+   }
+
+   // see DefaultGraphBuilder.isMatchingProject
+   private boolean isMatchingProject(Node node, String selector) {
+      if (selector.indexOf(':') >= 0) {
+         final String id = ':' + node.artifactId;
+         return id.equals(selector) || (node.groupId + id).equals(selector);
+      }
+      if (reactorDirectory != null) {
+         final File selectedProject = new File(new File(reactorDirectory, selector).toURI().normalize());
+         if (selectedProject.isFile()) {
+            return selectedProject.equals(normalize(node.descriptor));
+         }
+         if (selectedProject.isDirectory()) {
+            return selectedProject.equals(normalize(node.descriptor.getAbsoluteFile().getParentFile()));
+         }
+      }
+      return false;
+   }
+
+   private static File normalize(File file) {
+      return new File(file.getAbsoluteFile().toURI().normalize());
+   }
+
+   private static Set<Node> addDownstream(Collection<Node> nodes) {
+      final Set<Node> result = new LinkedHashSet<Node>();
+      for (Node node : nodes) {
+         addDownstream(node, result);
+      }
+      return result;
+   }
+
+   private static void addDownstream(Node node, Set<Node> result) {
+      if (result.add(node)) {
+         for (Node downstream : node.downstream) {
+            addDownstream(downstream, result);
+         }
+      }
+   }
+
+   private static void addUpstream(Node node, Set<Node> result) {
+      if (result.add(node)) {
+         for (Node upstream : node.upstream) {
+            addUpstream(upstream, result);
+         }
+      }
+   }
+
+   private static final class Node {
+      final File descriptor;
+
+      final Model model;
+
+      final String groupId;
+
+      final String artifactId;
+
+      final String key;
+
+      final List<Node> upstream = new ArrayList<Node>();
+
+      final List<Node> downstream = new ArrayList<Node>();
+
+      Node(File descriptor, Model model) {
+         this.descriptor = descriptor;
+         this.model = model;
+         final Parent parent = model.getParent();
+         final String rawGroupId = model.getGroupId() == null && parent != null ? parent.getGroupId() : model
+            .getGroupId();
+         groupId = rawGroupId == null ? null : interpolate(rawGroupId, model, rawGroupId);
+         artifactId = model.getArtifactId() == null ? null : interpolate(model.getArtifactId(), model, groupId);
+         key = groupId == null || artifactId == null ? null : groupId + ":" + artifactId;
+      }
+
+      /**
+       * Returns the keys of all projects this project may refer to. As profile activation isn't known for raw POMs,
+       * all profiles are treated as active. Returns <code>null</code> if a key can't be determined.
+       */
+      List<String> getUpstreamKeys() {
+         final List<String> keys = new ArrayList<String>();
+         final Parent parent = model.getParent();
+         if (parent != null && !add(keys, parent.getGroupId(), parent.getArtifactId())) {
+            return null;
+         }
+         if (!addReferences(keys, model)) {
+            return null;
+         }
+         if (model.getBuild() != null) {
+            for (Extension extension : model.getBuild().getExtensions()) {
+               if (!add(keys, extension.getGroupId(), extension.getArtifactId())) {
+                  return null;
+               }
+            }
+         }
+         for (Profile profile : model.getProfiles()) {
+            if (!addReferences(keys, profile)) {
+               return null;
+            }
+         }
+         return keys;
+      }
+
+      private boolean addReferences(List<String> keys, ModelBase base) {
+         if (!addDependencies(keys, base.getDependencies())) {
+            return false;
+         }
+         if (base.getDependencyManagement() != null) {
+            for (Dependency dependency : base.getDependencyManagement().getDependencies()) {
+               if ("import".equals(dependency.getScope())
+                  && !add(keys, dependency.getGroupId(), dependency.getArtifactId())) {
+                  return false;
+               }
+            }
+         }
+         final BuildBase build = base instanceof Model ? ((Model) base).getBuild() : ((Profile) base).getBuild();
+         if (build != null) {
+            for (Plugin plugin : build.getPlugins()) {
+               if (!add(keys, plugin.getGroupId(), plugin.getArtifactId())
+                  || !addDependencies(keys, plugin.getDependencies())) {
+                  return false;
+               }
+            }
+         }
+         return true;
+      }
+
+      private boolean addDependencies(List<String> keys, List<Dependency> dependencies) {
+         for (Dependency dependency : dependencies) {
+            if (!add(keys, dependency.getGroupId(), dependency.getArtifactId())) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      private boolean add(List<String> keys, String rawGroupId, String rawArtifactId) {
+         final String g = rawGroupId == null ? null : interpolate(rawGroupId, model, groupId);
+         final String a = rawArtifactId == null ? null : interpolate(rawArtifactId, model, groupId);
+         if (g == null || a == null) {
+            // an unknown group id is only acceptable for plugins, which default to org.apache.maven.plugins
+            return rawGroupId == null && a != null;
+         }
+         keys.add(g + ":" + a);
+         return true;
+      }
+
+      private static String interpolate(String value, Model model, String groupId) {
+         if (value.indexOf("${") < 0) {
+            return value;
+         }
+         final Properties properties = model.getProperties();
+         final StringBuilder sb = new StringBuilder();
+         int start = 0;
+         int begin;
+         while ((begin = value.indexOf("${", start)) > -1) {
+            final int end = value.indexOf('}', begin);
+            if (end < 0) {
+               return null;
+            }
+            final String expression = value.substring(begin + 2, end);
+            final String resolved;
+            if ("project.groupId".equals(expression) || "pom.groupId".equals(expression)
+               || "groupId".equals(expression)) {
+               resolved = groupId;
+            }
+            else if ("project.artifactId".equals(expression) || "pom.artifactId".equals(expression)) {
+               resolved = model.getArtifactId();
+            }
+            else if ("project.parent.groupId".equals(expression) && model.getParent() != null) {
+               resolved = model.getParent().getGroupId();
+            }
+            else if (isProfileProperty(model, expression)) {
+               // profiles may override the property
+               resolved = null;
+            }
+            else {
+               resolved = properties.getProperty(expression);
+            }
+            if (resolved == null || resolved.indexOf("${") > -1) {
+               return null;
+            }
+            sb.append(value.substring(start, begin)).append(resolved);
+            start = end + 1;
+         }
+         sb.append(value.substring(start));
+         return sb.toString();
+      }
+
+      private static boolean isProfileProperty(Model model, String key) {
+         for (Profile profile : model.getProfiles()) {
+            if (profile.getProperties().containsKey(key)) {
+               return true;
+            }
+         }
+         return false;
+      }
+   }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+
+/**
+ * Shares already built projects between the boot session and the actual session. A project is only shared if it can be
+ * proven that building its descriptor with the target request would result in the same project, that is if its POM,
+ * local parent chain and the reactor parents and BOMs it refers to weren't modified since the project was built and if
+ * the fingerprints of the POM under both requests and reactors are equal. Shared projects are copies, so that
+ * participants can modify them without affecting the other session.
+ */
+public class ProjectSharing {
+   // only used to fingerprint POMs, entries are never read or written
+   private final ProjectModelCache fingerprints = new ProjectModelCache(null, 0);
+
+   private int shared, rejected;
+
+   /**
+    * Returns a copy of the given project for the target request or <code>null</code> if the project must be built
+    * again.
+    * 
+    * @param project the project to share
+    * @param sourceRequest the request the project was built with
+    * @param sourceReactor the reactor the project was built in
+    * @param builtAt a point in time before the project was built
+    * @param targetRequest the request the copy would have been built with
+    * @param targetReactor the reactor the copy would have been built in or <code>null</code> if unknown, in which case
+    *           projects which refer to reactor BOMs or to reactor parents which aren't found via relative path are
+    *           never shared
+    */
+   public MavenProject share(MavenProject project, ProjectBuildingRequest sourceRequest,
+      ProjectReferences sourceReactor, long builtAt, ProjectBuildingRequest targetRequest,
+      ProjectReferences targetReactor) {
+      final MavenProject copy = isIdentical(project, sourceRequest, sourceReactor, builtAt, targetRequest,
+         targetReactor) ? copy(project) : null;
+      synchronized (this) {
+         if (copy == null) {
+            rejected++;
+         }
+         else {
+            shared++;
+         }
+      }
+      return copy;
+   }
+
+   private boolean isIdentical(MavenProject project, ProjectBuildingRequest sourceRequest,
+      ProjectReferences sourceReactor, long builtAt, ProjectBuildingRequest targetRequest,
+      ProjectReferences targetReactor) {
+      final File pomFile = project.getFile();
+      if (pomFile == null || !pomFile.isFile() || ProjectModelCache.getLastModified(pomFile) >= builtAt) {
+         return false;
+      }
+      // fingerprints are taken from the current content of the reactor POMs, which therefore must be unmodified too
+      for (File reactorPom : sourceReactor.getClosure(Collections.singletonList(pomFile))) {
+         if (ProjectModelCache.getLastModified(reactorPom) >= builtAt) {
+            return false;
+         }
+      }
+      final String fingerprint = fingerprints.fingerprint(pomFile, sourceRequest, sourceReactor);
+      return fingerprint != null
+         && fingerprint.equals(fingerprints.fingerprint(pomFile, targetRequest, targetReactor));
+   }
+
+   /**
+    * Returns a copy of the given project which shares the project realm with the original.
+    */
+   public static MavenProject copy(MavenProject project) {
+      final MavenProject copy = project.clone();
+      // realm and extension filter are derived from the build extensions of the model, which are identical
+      copy.setClassRealm(project.getClassRealm());
+      copy.setExtensionDependencyFilter(project.getExtensionDependencyFilter());
+      return copy;
+   }
+
+   public synchronized int getShared() {
+      return shared;
+   }
+
+   public synchronized int getRejected() {
+      return rejected;
+   }
+}
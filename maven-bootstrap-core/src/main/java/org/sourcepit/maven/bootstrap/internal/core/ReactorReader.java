@@ -43,6 +43,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.project.MavenProject;
@@ -51,137 +52,293 @@ import org.eclipse.aether.repository.WorkspaceReader;
 import org.eclipse.aether.repository.WorkspaceRepository;
 
 /**
- * An implementation of a workspace reader that knows how to search the Maven reactor for artifacts.
+ * An implementation of a workspace reader that knows how to search the Maven reactor for artifacts. Projects are
+ * indexed by artifact id at construction time and the artifacts of each project by extension and classifier on first
+ * use, so that lookups compare the coordinates directly instead of building keys and don't allocate.
  * 
  * @author Jason van Zyl
  */
 public class ReactorReader implements WorkspaceReader {
 
-   private Map<String, MavenProject> projectsByGAV;
+   private static final ReactorProject[] NO_PROJECTS = new ReactorProject[0];
 
-   private Map<String, List<MavenProject>> projectsByGA;
+   private final Map<String, ReactorProject[]> projectsByArtifactId;
 
    private WorkspaceRepository repository;
 
    public ReactorReader(Map<String, MavenProject> reactorProjects) {
-      projectsByGAV = reactorProjects;
-
-      projectsByGA = new HashMap<String, List<MavenProject>>(reactorProjects.size() * 2);
-      for (MavenProject project : reactorProjects.values()) {
-         String key = ArtifactUtils.versionlessKey(project.getGroupId(), project.getArtifactId());
+      this(reactorProjects.values(), reactorProjects.keySet());
+   }
 
-         List<MavenProject> projects = projectsByGA.get(key);
+   /**
+    * Creates a reader for projects which may share their coordinates. Artifacts are looked up in the projects with the
+    * requested coordinates in the given order, until one of them has a file.
+    */
+   public ReactorReader(List<MavenProject> reactorProjects) {
+      this(reactorProjects, getKeys(reactorProjects));
+   }
 
-         if (projects == null) {
-            projects = new ArrayList<MavenProject>(1);
-            projectsByGA.put(key, projects);
+   private ReactorReader(Collection<MavenProject> reactorProjects, Set<String> keys) {
+      final Map<String, List<ReactorProject>> projects = new HashMap<String, List<ReactorProject>>(
+         reactorProjects.size() * 2);
+      for (MavenProject project : reactorProjects) {
+         final String artifactId = project.getArtifactId();
+         List<ReactorProject> sameArtifactId = projects.get(artifactId);
+         if (sameArtifactId == null) {
+            sameArtifactId = new ArrayList<ReactorProject>(1);
+            projects.put(artifactId, sameArtifactId);
          }
+         sameArtifactId.add(new ReactorProject(project));
+      }
 
-         projects.add(project);
+      projectsByArtifactId = new HashMap<String, ReactorProject[]>(projects.size() * 2);
+      for (Map.Entry<String, List<ReactorProject>> entry : projects.entrySet()) {
+         projectsByArtifactId.put(entry.getKey(), entry.getValue().toArray(NO_PROJECTS));
       }
 
-      repository = new WorkspaceRepository("reactor", new HashSet<String>(projectsByGAV.keySet()));
+      repository = new WorkspaceRepository("reactor", new HashSet<String>(keys));
    }
 
-   private File find(MavenProject project, Artifact artifact) {
-      if ("pom".equals(artifact.getExtension())) {
-         return project.getFile();
+   private static Set<String> getKeys(List<MavenProject> reactorProjects) {
+      final Set<String> keys = new HashSet<String>();
+      for (MavenProject project : reactorProjects) {
+         keys.add(ArtifactUtils.key(project.getGroupId(), project.getArtifactId(), project.getVersion()));
       }
+      return keys;
+   }
+
+   /**
+    * A reactor project and the index of its artifacts.
+    */
+   private static final class ReactorProject {
+      final MavenProject project;
+
+      final String groupId;
 
-      org.apache.maven.artifact.Artifact projectArtifact = findMatchingArtifact(project, artifact);
+      final String version;
 
-      if (hasArtifactFileFromPackagePhase(projectArtifact)) {
-         return projectArtifact.getFile();
+      private volatile ArtifactIndex artifacts;
+
+      // the execution project, if it differs from the project
+      private volatile ReactorProject executionProject;
+
+      private volatile OutputDirectory outputDirectory;
+
+      private volatile OutputDirectory testOutputDirectory;
+
+      ReactorProject(MavenProject project) {
+         this.project = project;
+         groupId = project.getGroupId();
+         version = project.getVersion();
       }
-      else if (!hasBeenPackaged(project)) {
-         // fallback to loose class files only if artifacts haven't been packaged yet
 
-         if (isTestArtifact(artifact)) {
-            if (project.hasLifecyclePhase("test-compile")) {
-               return new File(project.getBuild().getTestOutputDirectory());
-            }
+      File findArtifactFile(Artifact requestedArtifact) {
+         ArtifactIndex index = artifacts;
+         if (index == null || !index.isValid(project)) {
+            // artifacts are attached while the project is built
+            index = new ArtifactIndex(project, index);
+            artifacts = index;
          }
-         else {
-            if (project.hasLifecyclePhase("compile")) {
-               return new File(project.getBuild().getOutputDirectory());
-            }
+         return index.findFile(requestedArtifact);
+      }
+
+      File getOutputDirectory() {
+         final String path = project.getBuild().getOutputDirectory();
+         OutputDirectory directory = outputDirectory;
+         if (directory == null || !directory.path.equals(path)) {
+            directory = new OutputDirectory(path);
+            outputDirectory = directory;
          }
+         return directory.file;
       }
 
-      // The fall-through indicates that the artifact cannot be found;
-      // for instance if package produced nothing or classifier problems.
-      return null;
-   }
+      File getTestOutputDirectory() {
+         final String path = project.getBuild().getTestOutputDirectory();
+         OutputDirectory directory = testOutputDirectory;
+         if (directory == null || !directory.path.equals(path)) {
+            directory = new OutputDirectory(path);
+            testOutputDirectory = directory;
+         }
+         return directory.file;
+      }
 
-   private boolean hasArtifactFileFromPackagePhase(org.apache.maven.artifact.Artifact projectArtifact) {
-      return projectArtifact != null && projectArtifact.getFile() != null && projectArtifact.getFile().exists();
+      ReactorProject getExecutionProject() {
+         final MavenProject execution = project.getExecutionProject();
+         if (execution == null || execution == project) {
+            return null;
+         }
+         ReactorProject reactorProject = executionProject;
+         if (reactorProject == null || reactorProject.project != execution) {
+            reactorProject = new ReactorProject(execution);
+            executionProject = reactorProject;
+         }
+         return reactorProject;
+      }
    }
 
-   private boolean hasBeenPackaged(MavenProject project) {
-      return project.hasLifecyclePhase("package") || project.hasLifecyclePhase("install")
-         || project.hasLifecyclePhase("deploy");
+   private static final class OutputDirectory {
+      final String path;
+
+      final File file;
+
+      OutputDirectory(String path) {
+         this.path = path;
+         file = new File(path);
+      }
    }
 
    /**
-    * Tries to resolve the specified artifact from the artifacts of the given project.
-    * 
-    * @param project The project to try to resolve the artifact from, must not be <code>null</code>.
-    * @param requestedArtifact The artifact to resolve, must not be <code>null</code>.
-    * @return The matching artifact from the project or <code>null</code> if not found.
+    * An immutable snapshot of the main and attached artifacts of a project, keyed by group id, artifact id, extension
+    * and classifier. That is the repository conflict id, which unlike the dependency conflict id uses the artifact
+    * file extension instead of the artifact type, so it closely reflects the identity of artifacts as perceived by a
+    * repository. Artifact files found to exist are remembered, so that the file system is asked once per artifact
+    * file, also across indexes of the same project. Missing files are checked again, as they may still be created by
+    * the build.
     */
-   private org.apache.maven.artifact.Artifact findMatchingArtifact(MavenProject project, Artifact requestedArtifact) {
-      String requestedRepositoryConflictId = getConflictId(requestedArtifact);
+   private static final class ArtifactIndex {
+      private final org.apache.maven.artifact.Artifact mainArtifact;
+
+      private final String[] keys;
+
+      private final org.apache.maven.artifact.Artifact[] artifacts;
+
+      // racy but safe, as File is immutable, a lost update merely costs another stat
+      private final File[] existingFiles;
 
-      org.apache.maven.artifact.Artifact mainArtifact = project.getArtifact();
-      if (requestedRepositoryConflictId.equals(getConflictId(mainArtifact))) {
-         return mainArtifact;
+      ArtifactIndex(MavenProject project, ArtifactIndex previous) {
+         mainArtifact = project.getArtifact();
+         final List<org.apache.maven.artifact.Artifact> attachedArtifacts = project.getAttachedArtifacts();
+         final int attachedCount = attachedArtifacts == null ? 0 : attachedArtifacts.size();
+
+         final List<org.apache.maven.artifact.Artifact> all = new ArrayList<org.apache.maven.artifact.Artifact>(
+            attachedCount + 1);
+         if (mainArtifact != null) {
+            all.add(mainArtifact);
+         }
+         if (attachedCount > 0) {
+            all.addAll(attachedArtifacts);
+         }
+
+         // group id, artifact id, extension and classifier per artifact
+         keys = new String[all.size() * 4];
+         artifacts = new org.apache.maven.artifact.Artifact[all.size()];
+         existingFiles = new File[all.size()];
+         for (int i = 0; i < artifacts.length; i++) {
+            final org.apache.maven.artifact.Artifact artifact = all.get(i);
+            keys[i * 4] = artifact.getGroupId();
+            keys[i * 4 + 1] = artifact.getArtifactId();
+            keys[i * 4 + 2] = String.valueOf(artifact.getArtifactHandler() != null ? artifact.getArtifactHandler()
+               .getExtension() : artifact.getType());
+            keys[i * 4 + 3] = artifact.hasClassifier() ? artifact.getClassifier() : "";
+            artifacts[i] = artifact;
+            if (previous != null) {
+               existingFiles[i] = previous.getExistingFile(artifact);
+            }
+         }
       }
 
-      Collection<org.apache.maven.artifact.Artifact> attachedArtifacts = project.getAttachedArtifacts();
-      if (attachedArtifacts != null && !attachedArtifacts.isEmpty()) {
-         for (org.apache.maven.artifact.Artifact attachedArtifact : attachedArtifacts) {
-            if (requestedRepositoryConflictId.equals(getConflictId(attachedArtifact))) {
-               return attachedArtifact;
+      boolean isValid(MavenProject project) {
+         if (mainArtifact != project.getArtifact()) {
+            return false;
+         }
+         // the list may be a new copy on every call or be modified in place, so its elements are compared
+         final List<org.apache.maven.artifact.Artifact> attached = project.getAttachedArtifacts();
+         final int offset = mainArtifact == null ? 0 : 1;
+         final int attachedCount = attached == null ? 0 : attached.size();
+         if (artifacts.length != offset + attachedCount) {
+            return false;
+         }
+         for (int i = 0; i < attachedCount; i++) {
+            if (attached.get(i) != artifacts[offset + i]) {
+               return false;
             }
          }
+         return true;
       }
 
-      return null;
+      private File getExistingFile(org.apache.maven.artifact.Artifact artifact) {
+         for (int i = 0; i < artifacts.length; i++) {
+            if (artifacts[i] == artifact) {
+               return existingFiles[i];
+            }
+         }
+         return null;
+      }
+
+      /**
+       * Returns the existing file of the first artifact matching the requested one or <code>null</code>. The main
+       * artifact precedes attached artifacts.
+       */
+      File findFile(Artifact requestedArtifact) {
+         final int i = indexOf(requestedArtifact);
+         if (i < 0) {
+            return null;
+         }
+         // the file is replaced when the artifact is packaged again
+         final File file = artifacts[i].getFile();
+         if (file == null) {
+            return null;
+         }
+         if (file == existingFiles[i]) {
+            return file;
+         }
+         if (file.exists()) {
+            existingFiles[i] = file;
+            return file;
+         }
+         return null;
+      }
+
+      private int indexOf(Artifact requestedArtifact) {
+         final String groupId = requestedArtifact.getGroupId();
+         final String artifactId = requestedArtifact.getArtifactId();
+         final String extension = requestedArtifact.getExtension();
+         final String classifier = requestedArtifact.getClassifier();
+         for (int i = 0; i < artifacts.length; i++) {
+            final int k = i * 4;
+            if (extension.equals(keys[k + 2]) && classifier.equals(keys[k + 3]) && artifactId.equals(keys[k + 1])
+               && groupId.equals(keys[k])) {
+               return i;
+            }
+         }
+         return -1;
+      }
    }
 
-   /**
-    * Gets the repository conflict id of the specified artifact. Unlike the dependency conflict id, the repository
-    * conflict id uses the artifact file extension instead of the artifact type. Hence, the repository conflict id more
-    * closely reflects the identity of artifacts as perceived by a repository.
-    * 
-    * @param artifact The artifact, must not be <code>null</code>.
-    * @return The repository conflict id, never <code>null</code>.
-    */
-   private String getConflictId(org.apache.maven.artifact.Artifact artifact) {
-      StringBuilder buffer = new StringBuilder(128);
-      buffer.append(artifact.getGroupId());
-      buffer.append(':').append(artifact.getArtifactId());
-      if (artifact.getArtifactHandler() != null) {
-         buffer.append(':').append(artifact.getArtifactHandler().getExtension());
+   private File find(ReactorProject reactorProject, Artifact artifact) {
+      final MavenProject project = reactorProject.project;
+      if ("pom".equals(artifact.getExtension())) {
+         return project.getFile();
       }
-      else {
-         buffer.append(':').append(artifact.getType());
+
+      final File artifactFile = reactorProject.findArtifactFile(artifact);
+
+      if (artifactFile != null) {
+         return artifactFile;
       }
-      if (artifact.hasClassifier()) {
-         buffer.append(':').append(artifact.getClassifier());
+      else if (!hasBeenPackaged(project)) {
+         // fallback to loose class files only if artifacts haven't been packaged yet
+
+         if (isTestArtifact(artifact)) {
+            if (project.hasLifecyclePhase("test-compile")) {
+               return reactorProject.getTestOutputDirectory();
+            }
+         }
+         else {
+            if (project.hasLifecyclePhase("compile")) {
+               return reactorProject.getOutputDirectory();
+            }
+         }
       }
-      return buffer.toString();
+
+      // The fall-through indicates that the artifact cannot be found;
+      // for instance if package produced nothing or classifier problems.
+      return null;
    }
 
-   private String getConflictId(Artifact artifact) {
-      StringBuilder buffer = new StringBuilder(128);
-      buffer.append(artifact.getGroupId());
-      buffer.append(':').append(artifact.getArtifactId());
-      buffer.append(':').append(artifact.getExtension());
-      if (artifact.getClassifier().length() > 0) {
-         buffer.append(':').append(artifact.getClassifier());
-      }
-      return buffer.toString();
+   private boolean hasBeenPackaged(MavenProject project) {
+      return project.hasLifecyclePhase("package") || project.hasLifecyclePhase("install")
+         || project.hasLifecyclePhase("deploy");
    }
 
    /**
@@ -196,34 +353,45 @@ public class ReactorReader implements WorkspaceReader {
    }
 
    public File findArtifact(Artifact artifact) {
-      String projectKey = ArtifactUtils.key(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
-
-      MavenProject project = projectsByGAV.get(projectKey);
-
-      if (project != null) {
-         File file = find(project, artifact);
-         if (file == null && project != project.getExecutionProject()) {
-            file = find(project.getExecutionProject(), artifact);
+      final ReactorProject[] projects = projectsByArtifactId.get(artifact.getArtifactId());
+      if (projects != null) {
+         final String groupId = artifact.getGroupId();
+         final String version = artifact.getVersion();
+         for (ReactorProject project : projects) {
+            if (version.equals(project.version) && groupId.equals(project.groupId)) {
+               final File file = findArtifact(project, artifact);
+               if (file != null) {
+                  return file;
+               }
+            }
          }
-         return file;
       }
-
       return null;
    }
 
-   public List<String> findVersions(Artifact artifact) {
-      String key = ArtifactUtils.versionlessKey(artifact.getGroupId(), artifact.getArtifactId());
+   private File findArtifact(ReactorProject project, Artifact artifact) {
+      File file = find(project, artifact);
+      if (file == null) {
+         final ReactorProject executionProject = project.getExecutionProject();
+         if (executionProject != null) {
+            file = find(executionProject, artifact);
+         }
+      }
+      return file;
+   }
 
-      List<MavenProject> projects = projectsByGA.get(key);
-      if (projects == null || projects.isEmpty()) {
+   public List<String> findVersions(Artifact artifact) {
+      final ReactorProject[] projects = projectsByArtifactId.get(artifact.getArtifactId());
+      if (projects == null) {
          return Collections.emptyList();
       }
 
       List<String> versions = new ArrayList<String>();
 
-      for (MavenProject project : projects) {
-         if (find(project, artifact) != null) {
-            versions.add(project.getVersion());
+      for (ReactorProject project : projects) {
+         if (artifact.getGroupId().equals(project.groupId) && find(project, artifact) != null
+            && !versions.contains(project.project.getVersion())) {
+            versions.add(project.project.getVersion());
          }
       }
 
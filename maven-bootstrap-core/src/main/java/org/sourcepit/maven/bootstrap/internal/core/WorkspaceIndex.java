@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.WorkspaceReader;
+import org.eclipse.aether.repository.WorkspaceRepository;
+
+/**
+ * A workspace reader which looks up the projects of the boot and of the actual reactor in a single
+ * {@link ReactorReader}, instead of chaining a reader per reactor. Both projects are kept if boot and actual reactor
+ * contain the same coordinates. The boot project is asked first, like the boot reactor reader precedes the readers of
+ * the repository session in a chain, and the actual project is asked if the boot project has no file for the artifact.
+ * Misses are passed on to a delegate, which must not look up the indexed actual projects again, e.g. the workspace
+ * reader of an IDE, or the reactor reader of an actual reactor which isn't built yet and therefore not indexed.
+ */
+public class WorkspaceIndex implements WorkspaceReader {
+   private final ReactorReader index;
+
+   private final WorkspaceReader delegate;
+
+   private final WorkspaceRepository repository;
+
+   private final AtomicInteger hits = new AtomicInteger();
+
+   private final AtomicInteger misses = new AtomicInteger();
+
+   /**
+    * @param bootProjects the boot projects by {@link ArtifactUtils#key(String, String, String) key}
+    * @param actualProjects the already built projects of the actual reactor, may be empty
+    * @param delegate the workspace reader to ask for misses, may be <code>null</code>
+    */
+   public WorkspaceIndex(Map<String, MavenProject> bootProjects, List<MavenProject> actualProjects,
+      WorkspaceReader delegate) {
+      final List<MavenProject> projects = new ArrayList<MavenProject>(bootProjects.size() + actualProjects.size());
+      projects.addAll(bootProjects.values());
+      projects.addAll(actualProjects);
+
+      index = new ReactorReader(projects);
+      this.delegate = delegate;
+
+      if (delegate == null) {
+         repository = index.getRepository();
+      }
+      else {
+         final WorkspaceRepository indexRepository = index.getRepository();
+         final WorkspaceRepository delegateRepository = delegate.getRepository();
+         final Set<Object> keys = new HashSet<Object>(Arrays.asList(indexRepository.getKey(),
+            delegateRepository.getKey()));
+         repository = new WorkspaceRepository(indexRepository.getContentType() + "+"
+            + delegateRepository.getContentType(), keys);
+      }
+   }
+
+   public WorkspaceRepository getRepository() {
+      return repository;
+   }
+
+   public File findArtifact(Artifact artifact) {
+      final File file = index.findArtifact(artifact);
+      if (file != null) {
+         hits.incrementAndGet();
+         return file;
+      }
+      misses.incrementAndGet();
+      return delegate == null ? null : delegate.findArtifact(artifact);
+   }
+
+   public List<String> findVersions(Artifact artifact) {
+      final List<String> versions = index.findVersions(artifact);
+      if (delegate == null) {
+         return versions;
+      }
+      final List<String> delegateVersions = delegate.findVersions(artifact);
+      if (delegateVersions.isEmpty()) {
+         return versions;
+      }
+      final Set<String> allVersions = new LinkedHashSet<String>(versions);
+      allVersions.addAll(delegateVersions);
+      return Collections.unmodifiableList(new ArrayList<String>(allVersions));
+   }
+
+   public int getHits() {
+      return hits.get();
+   }
+
+   public int getMisses() {
+      return misses.get();
+   }
+}
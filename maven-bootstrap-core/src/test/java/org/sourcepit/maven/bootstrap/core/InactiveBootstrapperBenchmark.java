@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.core;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+
+/**
+ * Measures the overhead of a bootstrapper that has nothing to do. The default path discovers no project descriptors
+ * with the actual session and returns before the boot session is created. A bootstrapper that answers
+ * {@link AbstractBootstrapper#isBootstrapRequired(MavenSession)} with <code>false</code> even skips discovery. Run
+ * manually, e.g. from the IDE:
+ * 
+ * <pre>
+ * java InactiveBootstrapperBenchmark [iterations]
+ * </pre>
+ */
+public class InactiveBootstrapperBenchmark {
+   public static void main(String[] args) throws Exception {
+      final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+      final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+      request.setBaseDirectory(new File("."));
+      final MavenSession actualSession = new MavenSession(null, new DefaultRepositorySystemSession(), request,
+         new DefaultMavenExecutionResult());
+
+      final AbstractBootstrapper defaultPath = newBootstrapper(null);
+      final AbstractBootstrapper notRequired = newBootstrapper(Boolean.FALSE);
+
+      for (int round = 0; round < 2; round++) {
+         final String phase = round == 0 ? "warmup " : "measure";
+
+         long start = System.nanoTime();
+         for (int i = 0; i < iterations; i++) {
+            defaultPath.executionStarted(actualSession, request);
+         }
+         System.out.println(phase + " default, no descriptors: " + toMicros(start, iterations) + " us/op");
+
+         start = System.nanoTime();
+         for (int i = 0; i < iterations; i++) {
+            notRequired.executionStarted(actualSession, request);
+         }
+         System.out.println(phase + " bootstrap not required: " + toMicros(start, iterations) + " us/op");
+      }
+   }
+
+   private static double toMicros(long start, int iterations) {
+      return (System.nanoTime() - start) / 1000d / iterations;
+   }
+
+   // required is null to keep the default of isBootstrapRequired
+   private static AbstractBootstrapper newBootstrapper(final Boolean required) throws Exception {
+      final AbstractBootstrapper bootstrapper = new AbstractBootstrapper("org.sourcepit", "benchmark") {
+         @Override
+         protected boolean isBootstrapRequired(MavenSession actualSession) {
+            return required == null ? super.isBootstrapRequired(actualSession) : required.booleanValue();
+         }
+
+         @Override
+         protected void discoverProjectDescriptors(MavenSession session, Collection<File> descriptors,
+            Collection<File> skippedDescriptors) {
+         }
+
+         @Override
+         protected String getDependencyResolutionRequired() {
+            return null;
+         }
+
+         @Override
+         protected void adjustActualSession(MavenSession bootSession, MavenSession actualSession) {
+         }
+
+         @Override
+         protected boolean isAllowExtensionExtensions(MavenSession bootSession, MavenProject bootProject) {
+            return false;
+         }
+
+         @Override
+         protected List<ArtifactRepository> filterArtifactRepositories(List<ArtifactRepository> remoteRepositories) {
+            return remoteRepositories;
+         }
+      };
+      final Field logger = AbstractBootstrapper.class.getDeclaredField("logger");
+      logger.setAccessible(true);
+      // skipping is logged on info level, which would dominate the measurement
+      logger.set(bootstrapper, new ConsoleLogger(Logger.LEVEL_WARN, "benchmark"));
+      return bootstrapper;
+   }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.resolver.ArtifactResolutionRequest;
+import org.apache.maven.artifact.resolver.ArtifactResolutionResult;
+import org.apache.maven.model.Dependency;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Test;
+
+public class ArtifactResolutionMemoTest {
+   @Test
+   public void testResolveOnce() {
+      final ArtifactResolutionMemo memo = new ArtifactResolutionMemo();
+      final AtomicInteger calls = new AtomicInteger();
+      final Callable<ArtifactResolutionResult> resolver = new Callable<ArtifactResolutionResult>() {
+         public ArtifactResolutionResult call() {
+            calls.incrementAndGet();
+            return new ArtifactResolutionResult();
+         }
+      };
+
+      final ArtifactResolutionResult result = memo.resolve("foo", resolver);
+      assertSame(result, memo.resolve("foo", resolver));
+      memo.resolve("bar", resolver);
+
+      assertEquals(2, calls.get());
+      assertEquals(2, memo.getResolutions());
+      assertEquals(1, memo.getSavedResolutions());
+   }
+
+   @Test
+   public void testFailuresAreNotRemembered() {
+      final ArtifactResolutionMemo memo = new ArtifactResolutionMemo();
+      final AtomicInteger calls = new AtomicInteger();
+      final Callable<ArtifactResolutionResult> resolver = new Callable<ArtifactResolutionResult>() {
+         public ArtifactResolutionResult call() {
+            if (calls.incrementAndGet() == 1) {
+               throw new IllegalStateException();
+            }
+            return new ArtifactResolutionResult();
+         }
+      };
+
+      try {
+         memo.resolve("foo", resolver);
+         fail();
+      }
+      catch (IllegalStateException e) {
+      }
+      memo.resolve("foo", resolver);
+      assertEquals(2, calls.get());
+   }
+
+   @Test
+   public void testKey() {
+      final Dependency dependency = new Dependency();
+      dependency.setGroupId("org.sourcepit");
+      dependency.setArtifactId("foo");
+      dependency.setVersion("1");
+
+      final ArtifactResolutionRequest request = new ArtifactResolutionRequest();
+      final String key = ArtifactResolutionMemo.newKey(dependency, request, null);
+      assertEquals(key, ArtifactResolutionMemo.newKey(dependency.clone(), new ArtifactResolutionRequest(), null));
+
+      request.setOffline(true);
+      assertFalse(key.equals(ArtifactResolutionMemo.newKey(dependency, request, null)));
+   }
+
+   @Test
+   public void testSessionScoped() {
+      final DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+      assertSame(ArtifactResolutionMemo.get(session), ArtifactResolutionMemo.get(session));
+      assertSame(ArtifactResolutionMemo.get(session), ArtifactResolutionMemo.get(new DefaultRepositorySystemSession(
+         session)));
+   }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.project.ProjectBuildingResult;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Measures building a synthetic reactor in which all modules inherit from a reactor parent and import a reactor BOM,
+ * sequentially and in concurrent partitions. The project builder is simulated by spinning for a fixed time per POM,
+ * so the numbers show how much of the speedup of {@link BootProjectBuilder#build(List, ProjectBuildingRequest, int)}
+ * is eaten up by building the shared upstream POMs again in every partition. Run manually, e.g. from the IDE:
+ * 
+ * <pre>
+ * java BootProjectBuilderBenchmark [modules] [threads] [micros per POM]
+ * </pre>
+ */
+public class BootProjectBuilderBenchmark {
+   public static void main(String[] args) throws Exception {
+      final int moduleCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+      final int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+      final long nanosPerPom = (args.length > 2 ? Long.parseLong(args[2]) : 2000L) * 1000L;
+
+      final File baseDir = File.createTempFile("reactor", "");
+      baseDir.delete();
+      baseDir.mkdirs();
+
+      final List<File> descriptors = new ArrayList<File>();
+      descriptors.add(writePom(new File(baseDir, "pom.xml"), "<artifactId>parent</artifactId>"
+         + "<packaging>pom</packaging>"));
+      descriptors.add(writePom(new File(baseDir, "bom/pom.xml"), "<artifactId>bom</artifactId>"
+         + "<packaging>pom</packaging>"));
+      for (int i = 0; i < moduleCount; i++) {
+         descriptors.add(writePom(new File(baseDir, "module-" + i + "/pom.xml"), "<parent><groupId>org.example"
+            + "</groupId><artifactId>parent</artifactId><version>1.0.0-SNAPSHOT</version></parent>"
+            + "<artifactId>module-" + i + "</artifactId><dependencyManagement><dependencies><dependency>"
+            + "<groupId>org.example</groupId><artifactId>bom</artifactId><version>1.0.0-SNAPSHOT</version>"
+            + "<type>pom</type><scope>import</scope></dependency></dependencies></dependencyManagement>"));
+      }
+
+      final AtomicInteger builtPoms = new AtomicInteger();
+      final BootProjectBuilder builder = new BootProjectBuilder(newProjectBuilder(builtPoms, nanosPerPom), null, null);
+
+      System.out.println(moduleCount + " modules with a reactor parent and BOM, " + threads + " threads");
+
+      for (int round = 0; round < 2; round++) {
+         final String phase = round == 0 ? "warmup " : "measure";
+         for (int t : new int[] { 1, threads }) {
+            builtPoms.set(0);
+            final long start = System.nanoTime();
+            final int projects = builder.build(descriptors, new DefaultProjectBuildingRequest(), t).size();
+            System.out.println(phase + " " + t + " thread(s): " + (System.nanoTime() - start) / 1000000 + " ms ("
+               + projects + " projects, " + builtPoms.get() + " POMs built)");
+         }
+      }
+
+      FileUtils.deleteDirectory(baseDir);
+   }
+
+   private static File writePom(File pomFile, String content) throws Exception {
+      pomFile.getParentFile().mkdirs();
+      FileUtils.fileWrite(pomFile, "UTF-8", "<project><modelVersion>4.0.0</modelVersion><groupId>org.example</groupId>"
+         + "<version>1.0.0-SNAPSHOT</version>" + content + "</project>");
+      return pomFile;
+   }
+
+   private static ProjectBuilder newProjectBuilder(final AtomicInteger builtPoms, final long nanosPerPom) {
+      return (ProjectBuilder) Proxy.newProxyInstance(BootProjectBuilderBenchmark.class.getClassLoader(),
+         new Class<?>[] { ProjectBuilder.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+               if (!"build".equals(method.getName()) || !(args[0] instanceof List)) {
+                  throw new UnsupportedOperationException(method.toString());
+               }
+               final List<?> pomFiles = (List<?>) args[0];
+               final List<ProjectBuildingResult> results = new ArrayList<ProjectBuildingResult>(pomFiles.size());
+               for (Object pomFile : pomFiles) {
+                  final long end = System.nanoTime() + nanosPerPom;
+                  while (System.nanoTime() < end) {
+                     // simulates building the effective model
+                  }
+                  builtPoms.incrementAndGet();
+                  results.add(newResult((File) pomFile));
+               }
+               return results;
+            }
+         });
+   }
+
+   private static ProjectBuildingResult newResult(final File pomFile) {
+      final MavenProject project = new MavenProject();
+      project.setFile(pomFile);
+      return (ProjectBuildingResult) Proxy.newProxyInstance(BootProjectBuilderBenchmark.class.getClassLoader(),
+         new Class<?>[] { ProjectBuildingResult.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+               if ("getProject".equals(method.getName())) {
+                  return project;
+               }
+               if ("getPomFile".equals(method.getName())) {
+                  return pomFile;
+               }
+               return null;
+            }
+         });
+   }
+}
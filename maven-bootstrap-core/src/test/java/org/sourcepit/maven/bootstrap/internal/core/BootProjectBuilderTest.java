@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.model.building.ModelSource;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuilder;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.project.ProjectBuildingResult;
+import org.apache.maven.repository.RepositorySystem;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class BootProjectBuilderTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testMissesAreBuiltWithCachedParent() throws Exception {
+      final File parentPom = writePom("pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version>"
+         + "<packaging>pom</packaging></project>");
+      final File modulePom = writePom("module/pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+         + "<parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+         + "<artifactId>module</artifactId></project>");
+
+      final RecordingProjectBuilder projectBuilder = new RecordingProjectBuilder();
+      final BootProjectBuilder builder = new BootProjectBuilder(projectBuilder.newProxy(), newRepositorySystem(),
+         new ProjectModelCache(new File(ws.getRoot(), "cache"), 10));
+
+      final List<File> descriptors = Arrays.asList(parentPom, modulePom);
+      builder.build(descriptors, newRequest());
+      assertEquals(Collections.singletonList(descriptors), projectBuilder.reactorBuilds);
+
+      // both hit the cache
+      projectBuilder.reactorBuilds.clear();
+      List<MavenProject> projects = builder.build(descriptors, newRequest());
+      assertEquals(Collections.emptyList(), projectBuilder.reactorBuilds);
+      assertEquals(2, projectBuilder.modelBuilds);
+      assertEquals("module", projects.get(1).getArtifactId());
+      assertSame(projects.get(0), projects.get(1).getParent());
+      assertEquals(parentPom, projects.get(1).getParentFile());
+      assertEquals(modulePom, projects.get(1).getFile());
+      assertEquals("parent", projects.get(1).getModel().getParent().getArtifactId());
+
+      // the cached parent must be built together with the modified module
+      writePom("module/pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+         + "<parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+         + "<artifactId>module</artifactId><packaging>pom</packaging></project>");
+      projects = builder.build(descriptors, newRequest());
+      assertEquals(Collections.singletonList(descriptors), projectBuilder.reactorBuilds);
+      assertEquals(2, projects.size());
+      assertEquals("pom", projects.get(1).getPackaging());
+   }
+
+   @Test
+   public void testPartitionsContainReferencedPoms() throws Exception {
+      final File parentPom = writePom("pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version>"
+         + "<packaging>pom</packaging></project>");
+      final File bomPom = writePom("bom/pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>bom</artifactId><version>1</version>"
+         + "<packaging>pom</packaging></project>");
+      final File module1Pom = writePom("module1/pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+         + "<parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+         + "<artifactId>module1</artifactId></project>");
+      final File module2Pom = writePom("module2/pom.xml", "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>module2</artifactId><version>1</version>"
+         + "<dependencyManagement><dependencies><dependency><groupId>org.sourcepit</groupId>"
+         + "<artifactId>bom</artifactId><version>1</version><type>pom</type><scope>import</scope>"
+         + "</dependency></dependencies></dependencyManagement></project>");
+
+      final RecordingProjectBuilder projectBuilder = new RecordingProjectBuilder();
+      final BootProjectBuilder builder = new BootProjectBuilder(projectBuilder.newProxy(), newRepositorySystem(), null);
+
+      final List<File> descriptors = Arrays.asList(parentPom, bomPom, module1Pom, module2Pom);
+      final List<MavenProject> projects = builder.build(descriptors, newRequest(), 2);
+
+      // the partitions are [parent, bom] and [module1, module2]
+      assertEquals(2, projectBuilder.reactorBuilds.size());
+      assertTrue(projectBuilder.reactorBuilds.contains(Arrays.asList(parentPom, bomPom)));
+      assertTrue(projectBuilder.reactorBuilds.contains(descriptors));
+
+      assertEquals(4, projects.size());
+      for (int i = 0; i < descriptors.size(); i++) {
+         assertEquals(descriptors.get(i), projects.get(i).getFile());
+      }
+   }
+
+   private File writePom(String path, String content) throws IOException {
+      final File file = new File(ws.getRoot(), path);
+      file.getParentFile().mkdirs();
+      FileUtils.fileWrite(file, "UTF-8", content);
+      return file;
+   }
+
+   private static ProjectBuildingRequest newRequest() {
+      final ProjectBuildingRequest request = new DefaultProjectBuildingRequest();
+      request.setUserProperties(new Properties());
+      request.setSystemProperties(new Properties());
+      return request;
+   }
+
+   private static RepositorySystem newRepositorySystem() {
+      return (RepositorySystem) Proxy.newProxyInstance(BootProjectBuilderTest.class.getClassLoader(),
+         new Class<?>[] { RepositorySystem.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+               return null;
+            }
+         });
+   }
+
+   /**
+    * Builds projects from raw models and records the POMs which are built together.
+    */
+   static class RecordingProjectBuilder implements InvocationHandler {
+      final List<List<File>> reactorBuilds = Collections.synchronizedList(new ArrayList<List<File>>());
+
+      volatile int modelBuilds;
+
+      ProjectBuilder newProxy() {
+         return (ProjectBuilder) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { ProjectBuilder.class }, this);
+      }
+
+      public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+         if (args.length == 3 && args[0] instanceof List) {
+            @SuppressWarnings("unchecked")
+            final List<File> pomFiles = (List<File>) args[0];
+            reactorBuilds.add(new ArrayList<File>(pomFiles));
+            final List<ProjectBuildingResult> results = new ArrayList<ProjectBuildingResult>();
+            for (File pomFile : pomFiles) {
+               final Model model = ProjectModelCache.readModel(pomFile);
+               model.setPomFile(pomFile);
+               results.add(newResult(pomFile, newProject(model)));
+            }
+            return results;
+         }
+         if (args.length == 2 && args[0] instanceof ModelSource) {
+            modelBuilds++;
+            return newResult(null, newProject(readModel((ModelSource) args[0])));
+         }
+         if (args.length == 2 && args[0] instanceof File) {
+            final File pomFile = (File) args[0];
+            return newResult(pomFile, newProject(ProjectModelCache.readModel(pomFile)));
+         }
+         throw new UnsupportedOperationException(method.toString());
+      }
+
+      private static MavenProject newProject(Model model) {
+         final MavenProject project = new MavenProject(model);
+         project.setFile(model.getPomFile());
+         return project;
+      }
+
+      private static Model readModel(ModelSource modelSource) throws IOException, XmlPullParserException {
+         final InputStream in = modelSource.getInputStream();
+         try {
+            return new MavenXpp3Reader().read(in, false);
+         }
+         finally {
+            IOUtil.close(in);
+         }
+      }
+
+      private static ProjectBuildingResult newResult(final File pomFile, final MavenProject project) {
+         return (ProjectBuildingResult) Proxy.newProxyInstance(RecordingProjectBuilder.class.getClassLoader(),
+            new Class<?>[] { ProjectBuildingResult.class }, new InvocationHandler() {
+               public Object invoke(Object proxy, Method method, Object[] args) {
+                  if ("getPomFile".equals(method.getName())) {
+                     return pomFile;
+                  }
+                  if ("getProject".equals(method.getName())) {
+                     return project;
+                  }
+                  if ("getProjectId".equals(method.getName())) {
+                     return project.getId();
+                  }
+                  return null;
+               }
+            });
+      }
+   }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.MavenArtifactRepository;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class BootSessionCoordinatorTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testShare() throws IOException {
+      final File pom = writePom(new File(ws.getRoot(), "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>module</artifactId><version>1</version></project>");
+      pom.setLastModified(100000L);
+
+      final Model model = new Model();
+      model.setArtifactId("module");
+      final MavenProject project = new MavenProject(model);
+      project.setFile(pom);
+
+      final MavenSession actualSession = newSession();
+      final BootSessionCoordinator coordinator = new BootSessionCoordinator();
+      coordinator.register(actualSession, Collections.singletonList(project), newRequest("central"),
+         Collections.singletonList(pom), 200000L);
+
+      final List<File> descriptors = Collections.singletonList(pom);
+
+      Map<File, MavenProject> sharedProjects = new LinkedHashMap<File, MavenProject>();
+      coordinator.share(actualSession, descriptors, newRequest("central"), new ProjectSharing(), sharedProjects);
+      assertEquals(1, sharedProjects.size());
+      assertNotSame(project, sharedProjects.get(pom));
+
+      // other sessions and differently filtered repositories don't match
+      sharedProjects.clear();
+      coordinator.share(newSession(), descriptors, newRequest("central"), new ProjectSharing(), sharedProjects);
+      coordinator.share(actualSession, descriptors, newRequest("mirror"), new ProjectSharing(), sharedProjects);
+      assertTrue(sharedProjects.isEmpty());
+
+      coordinator.release(actualSession);
+      coordinator.share(actualSession, descriptors, newRequest("central"), new ProjectSharing(), sharedProjects);
+      assertTrue(sharedProjects.isEmpty());
+   }
+
+   @Test
+   public void testShareAcrossClassLoaders() throws Exception {
+      final File pom = writePom(new File(ws.getRoot(), "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>module</artifactId><version>1</version></project>");
+      pom.setLastModified(100000L);
+
+      final Model model = new Model();
+      model.setArtifactId("module");
+      final MavenProject project = new MavenProject(model);
+      project.setFile(pom);
+
+      // each bootstrapper has its own extension realm and therefore its own copy of the coordinator
+      final ClassLoader realm1 = new IsolatingClassLoader(getClass().getClassLoader());
+      final ClassLoader realm2 = new IsolatingClassLoader(getClass().getClassLoader());
+
+      final Class<?> coordinatorClass1 = realm1.loadClass(BootSessionCoordinator.class.getName());
+      final Class<?> coordinatorClass2 = realm2.loadClass(BootSessionCoordinator.class.getName());
+      assertNotSame(coordinatorClass1, coordinatorClass2);
+
+      final MavenSession actualSession = newSession();
+      coordinatorClass1.getMethod("register", MavenSession.class, Collection.class, ProjectBuildingRequest.class,
+         List.class, long.class).invoke(coordinatorClass1.newInstance(), actualSession,
+         Collections.singletonList(project), newRequest("central"), Collections.singletonList(pom),
+         Long.valueOf(200000L));
+
+      final Class<?> sharingClass2 = realm2.loadClass(ProjectSharing.class.getName());
+      final Map<File, MavenProject> sharedProjects = new LinkedHashMap<File, MavenProject>();
+      coordinatorClass2.getMethod("share", MavenSession.class, List.class, ProjectBuildingRequest.class,
+         sharingClass2, Map.class).invoke(coordinatorClass2.newInstance(), actualSession,
+         Collections.singletonList(pom), newRequest("central"), sharingClass2.newInstance(), sharedProjects);
+      assertEquals(1, sharedProjects.size());
+      assertNotSame(project, sharedProjects.get(pom));
+   }
+
+   private static MavenSession newSession() {
+      return new MavenSession(null, new DefaultRepositorySystemSession(), new DefaultMavenExecutionRequest(),
+         new DefaultMavenExecutionResult());
+   }
+
+   private static ProjectBuildingRequest newRequest(String repositoryId) {
+      final ProjectBuildingRequest request = new DefaultProjectBuildingRequest();
+      request.setUserProperties(new Properties());
+      request.setSystemProperties(new Properties());
+      final ArtifactRepository repository = new MavenArtifactRepository(repositoryId, "http://localhost/"
+         + repositoryId, null, null, null);
+      request.setRemoteRepositories(Collections.singletonList(repository));
+      return request;
+   }
+
+   /**
+    * Defines its own copies of the internal core classes and delegates everything else to the parent.
+    */
+   private static final class IsolatingClassLoader extends ClassLoader {
+      private static final String PACKAGE = BootSessionCoordinator.class.getPackage().getName() + ".";
+
+      IsolatingClassLoader(ClassLoader parent) {
+         super(parent);
+      }
+
+      @Override
+      protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+         if (!name.startsWith(PACKAGE)) {
+            return super.loadClass(name, resolve);
+         }
+         Class<?> clazz = findLoadedClass(name);
+         if (clazz == null) {
+            final InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (in == null) {
+               throw new ClassNotFoundException(name);
+            }
+            try {
+               final byte[] bytes = IOUtil.toByteArray(in);
+               clazz = defineClass(name, bytes, 0, bytes.length);
+            }
+            catch (IOException e) {
+               throw new ClassNotFoundException(name, e);
+            }
+            finally {
+               IOUtil.close(in);
+            }
+         }
+         if (resolve) {
+            resolveClass(clazz);
+         }
+         return clazz;
+      }
+   }
+
+   private static File writePom(File file, String content) throws IOException {
+      file.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+      return file;
+   }
+}
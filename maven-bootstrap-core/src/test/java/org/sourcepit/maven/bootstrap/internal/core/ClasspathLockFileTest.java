@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+import org.sourcepit.maven.bootstrap.internal.core.ClasspathLockFile.LockedArtifact;
+
+public class ClasspathLockFileTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testWriteAndRead() throws IOException {
+      final File localRepository = new File(ws.getRoot(), "repository");
+      final File jar = write(new File(localRepository, "org/sourcepit/foo/1/foo-1.jar"), "foo");
+
+      final File file = new File(ws.getRoot(), "bootstrap.lock");
+      final String key = "org.sourcepit:foo:jar:1 !org.sourcepit:bar @central=http://localhost/repo";
+      ClasspathLockFile lockFile = ClasspathLockFile.read(file, localRepository);
+      assertNull(lockFile.get(key));
+
+      final LockedArtifact artifact = lockFile.lock("org.sourcepit:foo:jar:1", jar);
+      assertEquals("org/sourcepit/foo/1/foo-1.jar", artifact.getPath());
+
+      lockFile.put(key, Collections.singletonList(artifact));
+      lockFile.write();
+
+      lockFile = ClasspathLockFile.read(file, localRepository);
+      final List<LockedArtifact> classpath = lockFile.get(key);
+      assertEquals(Collections.singletonList(artifact), classpath);
+      assertEquals(Arrays.asList(jar), lockFile.getFiles(classpath));
+   }
+
+   @Test
+   public void testRetainUsed() throws IOException {
+      final File localRepository = new File(ws.getRoot(), "repository");
+      final File jar = write(new File(localRepository, "org/sourcepit/foo/1/foo-1.jar"), "foo");
+
+      final File file = new File(ws.getRoot(), "bootstrap.lock");
+      ClasspathLockFile lockFile = ClasspathLockFile.read(file, localRepository);
+      final List<LockedArtifact> classpath = Collections.singletonList(lockFile.lock("org.sourcepit:foo:jar:1", jar));
+      lockFile.put("org.sourcepit:foo:jar:1", classpath);
+      lockFile.put("org.sourcepit:bar:jar:1", classpath);
+      lockFile.write();
+
+      // only foo is still used
+      lockFile = ClasspathLockFile.read(file, localRepository);
+      lockFile.put("org.sourcepit:foo:jar:1", classpath);
+      lockFile.retainUsed();
+      lockFile.write();
+
+      lockFile = ClasspathLockFile.read(file, localRepository);
+      assertEquals(classpath, lockFile.get("org.sourcepit:foo:jar:1"));
+      assertNull(lockFile.get("org.sourcepit:bar:jar:1"));
+   }
+
+   @Test
+   public void testMissingAndModifiedFiles() throws IOException {
+      final File localRepository = new File(ws.getRoot(), "repository");
+      final File jar = write(new File(localRepository, "foo.jar"), "foo");
+
+      final ClasspathLockFile lockFile = ClasspathLockFile.read(new File(ws.getRoot(), "bootstrap.lock"),
+         localRepository);
+      final List<LockedArtifact> classpath = Collections.singletonList(lockFile.lock("org.sourcepit:foo:jar:1", jar));
+
+      write(jar, "bar");
+      try {
+         lockFile.getFiles(classpath);
+         fail();
+      }
+      catch (IllegalStateException e) {
+      }
+
+      jar.delete();
+      assertNull(lockFile.getFiles(classpath));
+   }
+
+   private static File write(File file, String content) throws IOException {
+      file.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+      return file;
+   }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class ComponentIndexTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testJars() throws IOException {
+      final File library = new File(ws.getRoot(), "library.jar");
+      writeJar(library, "org/sourcepit/Foo.class");
+      final File plexus = new File(ws.getRoot(), "plexus.jar");
+      writeJar(plexus, "META-INF/plexus/components.xml");
+      final File sisu = new File(ws.getRoot(), "sisu.jar");
+      writeJar(sisu, "META-INF/sisu/javax.inject.Named");
+
+      assertFalse(ComponentIndex.hasComponentMetadata(new URL[] { library.toURI().toURL() }));
+      assertTrue(ComponentIndex.hasComponentMetadata(new URL[] { library.toURI().toURL(), plexus.toURI().toURL() }));
+      assertTrue(ComponentIndex.hasComponentMetadata(new URL[] { sisu.toURI().toURL() }));
+
+      // modified artifacts are read again
+      writeJar(library, "META-INF/sisu/javax.inject.Named");
+      library.setLastModified(library.lastModified() + 10000L);
+      assertTrue(ComponentIndex.hasComponentMetadata(new URL[] { library.toURI().toURL() }));
+   }
+
+   @Test
+   public void testDirectory() throws IOException {
+      final File classes = ws.newDir("classes");
+      assertFalse(ComponentIndex.hasComponentMetadata(new URL[] { classes.toURI().toURL() }));
+
+      final File index = new File(classes, "META-INF/plexus/components.xml");
+      index.getParentFile().mkdirs();
+      index.createNewFile();
+      // the modification time of the classes directory itself doesn't change
+      assertTrue(ComponentIndex.hasComponentMetadata(new URL[] { classes.toURI().toURL() }));
+   }
+
+   private static void writeJar(File jar, String entry) throws IOException {
+      final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+      try {
+         out.putNextEntry(new ZipEntry(entry));
+         out.closeEntry();
+      }
+      finally {
+         out.close();
+      }
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class ExtensionDescriptorCacheTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testCache() throws IOException {
+      final File jar = new File(ws.getRoot(), "extension.jar");
+      writeJar(jar, "org.sourcepit");
+
+      final ExtensionDescriptorCache cache = new ExtensionDescriptorCache(10);
+      final ExtensionDescriptor descriptor = cache.read(jar);
+      assertEquals("org.sourcepit", descriptor.getExportedPackages().get(0));
+      assertSame(descriptor, cache.read(jar.toURI().toURL()));
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+
+      // modified artifacts are read again
+      writeJar(jar, "org.sourcepit.foo");
+      jar.setLastModified(jar.lastModified() + 10000L);
+      assertEquals("org.sourcepit.foo", cache.read(jar).getExportedPackages().get(0));
+      assertEquals(2, cache.getMisses());
+
+      try {
+         descriptor.getExportedPackages().add("foo");
+         fail();
+      }
+      catch (UnsupportedOperationException e) {
+      }
+   }
+
+   @Test
+   public void testEviction() throws IOException {
+      final File jar1 = new File(ws.getRoot(), "extension1.jar");
+      writeJar(jar1, null);
+      final File jar2 = new File(ws.getRoot(), "extension2.jar");
+      writeJar(jar2, "org.sourcepit");
+
+      final ExtensionDescriptorCache cache = new ExtensionDescriptorCache(1);
+      assertNull(cache.read(jar1));
+      assertNull(cache.read(jar1));
+      assertEquals(1, cache.getHits());
+
+      cache.read(jar2);
+      assertNull(cache.read(jar1));
+      assertEquals(1, cache.getHits());
+      assertEquals(3, cache.getMisses());
+   }
+
+   private static void writeJar(File jar, String exportedPackage) throws IOException {
+      final ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(jar));
+      try {
+         if (exportedPackage == null) {
+            zipOut.putNextEntry(new ZipEntry("foo"));
+         }
+         else {
+            zipOut.putNextEntry(new ZipEntry("META-INF/maven/extension.xml"));
+            zipOut.write(("<extension><exportedPackages><exportedPackage>" + exportedPackage
+               + "</exportedPackage></exportedPackages></extension>").getBytes("UTF-8"));
+         }
+         zipOut.closeEntry();
+      }
+      finally {
+         zipOut.close();
+      }
+   }
+}
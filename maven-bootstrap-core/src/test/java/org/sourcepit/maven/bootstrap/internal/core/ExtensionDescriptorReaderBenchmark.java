@@ -0,0 +1,112 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+
+/**
+ * Compares reading an extension descriptor from a large jar by scanning the zip stream and parsing a DOM (the former
+ * implementation) with {@link ExtensionDescriptorReader}. Run manually, e.g. from the IDE:
+ * 
+ * <pre>
+ * java ExtensionDescriptorReaderBenchmark [entries] [entrySize] [iterations]
+ * </pre>
+ */
+public class ExtensionDescriptorReaderBenchmark {
+   public static void main(String[] args) throws Exception {
+      final int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+      final int entrySize = args.length > 1 ? Integer.parseInt(args[1]) : 16 * 1024;
+      final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+
+      final File jar = File.createTempFile("extension", ".jar");
+      jar.deleteOnExit();
+      writeJar(jar, entries, entrySize);
+
+      System.out.println("Jar with " + entries + " entries, " + (jar.length() / 1024) + " KB");
+
+      for (int round = 0; round < 2; round++) {
+         final String phase = round == 0 ? "warmup " : "measure";
+
+         long start = System.nanoTime();
+         for (int i = 0; i < iterations; i++) {
+            scanAndParseDom(jar);
+         }
+         System.out.println(phase + " zip stream + DOM: " + toMillis(start, iterations) + " ms/op");
+
+         start = System.nanoTime();
+         for (int i = 0; i < iterations; i++) {
+            ExtensionDescriptorReader.read(jar);
+         }
+         System.out.println(phase + " ExtensionDescriptorReader: " + toMillis(start, iterations) + " ms/op");
+      }
+   }
+
+   private static double toMillis(long start, int iterations) {
+      return (System.nanoTime() - start) / 1000000d / iterations;
+   }
+
+   private static Document scanAndParseDom(File jar) throws Exception {
+      final ZipInputStream zipIn = new ZipInputStream(new BufferedInputStream(new FileInputStream(jar)));
+      try {
+         ZipEntry entry;
+         while ((entry = zipIn.getNextEntry()) != null) {
+            if ("META-INF/maven/extension.xml".equals(entry.getName())) {
+               return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(zipIn);
+            }
+         }
+         return null;
+      }
+      finally {
+         zipIn.close();
+      }
+   }
+
+   private static void writeJar(File jar, int entries, int entrySize) throws IOException {
+      final Random random = new Random(42);
+      final byte[] content = new byte[entrySize];
+      final ZipOutputStream zipOut = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+      try {
+         for (int i = 0; i < entries; i++) {
+            random.nextBytes(content);
+            zipOut.putNextEntry(new ZipEntry("org/sourcepit/Class" + i + ".class"));
+            zipOut.write(content);
+            zipOut.closeEntry();
+         }
+         // worst case for stream scanning, the descriptor comes last
+         zipOut.putNextEntry(new ZipEntry("META-INF/maven/extension.xml"));
+         zipOut.write(("<extension><exportedPackages><exportedPackage>org.sourcepit</exportedPackage>"
+            + "</exportedPackages></extension>").getBytes("UTF-8"));
+         zipOut.closeEntry();
+      }
+      finally {
+         zipOut.close();
+      }
+   }
+}
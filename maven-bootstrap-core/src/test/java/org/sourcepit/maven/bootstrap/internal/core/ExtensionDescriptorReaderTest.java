@@ -26,6 +26,9 @@ import static org.sourcepit.common.utils.xml.XmlUtils.writeXml;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -66,11 +69,8 @@ public class ExtensionDescriptorReaderTest {
 
    @Test
    public void testWithEntries() {
-      final ExtensionDescriptor expected = new ExtensionDescriptor();
-      expected.getExportedPackages().add("org.sourcepit");
-      expected.getExportedPackages().add("foo.bar");
-
-      expected.getExportedArtifacts().add("org.sourcepit:foo");
+      final ExtensionDescriptor expected = new ExtensionDescriptor(Arrays.asList("org.sourcepit", "foo.bar"),
+         Arrays.asList("org.sourcepit:foo"));
 
       final ExtensionDescriptor actual = ExtensionDescriptorReader.read(createExtensionArtifact(expected));
 
@@ -78,6 +78,41 @@ public class ExtensionDescriptorReaderTest {
       assertEquals(expected.getExportedArtifacts(), actual.getExportedArtifacts());
    }
 
+   @Test
+   public void testURL() throws Exception {
+      final ExtensionDescriptor expected = new ExtensionDescriptor(Arrays.asList("org.sourcepit"),
+         Collections.<String> emptyList());
+
+      final ExtensionDescriptor actual = ExtensionDescriptorReader.read(createExtensionArtifact(expected).toURI()
+         .toURL());
+
+      assertEquals(expected.getExportedPackages(), actual.getExportedPackages());
+      assertEquals(expected.getExportedArtifacts(), actual.getExportedArtifacts());
+   }
+
+   @Test
+   public void testDirectory() {
+      final File extensionDir = new File(ws.getRoot(), "extensionArtifact");
+      assertNull(ExtensionDescriptorReader.read(extensionDir));
+
+      final ExtensionDescriptor expected = new ExtensionDescriptor(Arrays.asList("org.sourcepit"),
+         Arrays.asList("org.sourcepit:foo"));
+
+      final File descriptorFile = new File(extensionDir, "META-INF/maven/extension.xml");
+      descriptorFile.getParentFile().mkdirs();
+      new IOOperation<OutputStream>(buffOut(fileOut(descriptorFile))) {
+         @Override
+         protected void run(OutputStream out) throws IOException {
+            writeXml(toDocument(expected), out);
+         }
+      }.run();
+
+      final ExtensionDescriptor actual = ExtensionDescriptorReader.read(extensionDir);
+
+      assertEquals(expected.getExportedPackages(), actual.getExportedPackages());
+      assertEquals(expected.getExportedArtifacts(), actual.getExportedArtifacts());
+   }
+
    private File createExtensionArtifact(ExtensionDescriptor expected) {
       final File extensionArtifact = new File(ws.getRoot(), "extensionArtifact.zip");
       writeExtensionArtifact(extensionArtifact, expected);
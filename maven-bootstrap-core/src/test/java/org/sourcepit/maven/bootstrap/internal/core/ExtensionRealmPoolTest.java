@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+
+import org.codehaus.plexus.classworlds.ClassWorld;
+import org.codehaus.plexus.classworlds.realm.ClassRealm;
+import org.junit.Test;
+
+public class ExtensionRealmPoolTest {
+   @Test
+   public void testDisposeOnRelease() throws Exception {
+      final ClassWorld world = new ClassWorld();
+      final ClassRealm realm = world.newRealm("foo");
+
+      final ExtensionRealmPool pool = new ExtensionRealmPool();
+      final Object session = new Object();
+      pool.add(session, "foo", "foo.jar", realm);
+      assertSame(realm, pool.get(session, "foo"));
+
+      pool.release(session, 0);
+
+      assertNull(pool.get(session, "foo"));
+      assertNull(world.getClassRealm("foo"));
+      assertEquals(0, pool.getIdleRealmCount());
+   }
+
+   @Test
+   public void testReuseAcrossSessions() throws Exception {
+      final ClassWorld world = new ClassWorld();
+      final ClassRealm foo = world.newRealm("foo");
+      final ClassRealm bar = world.newRealm("bar");
+
+      final ExtensionRealmPool pool = new ExtensionRealmPool();
+      final Object session1 = new Object();
+      pool.add(session1, "foo", "foo.jar", foo);
+      pool.add(session1, "bar", "bar.jar", bar);
+      pool.release(session1, 2);
+      assertEquals(2, pool.getIdleRealmCount());
+
+      final Object session2 = new Object();
+      assertNull(pool.acquire(session2, "foo", "foo2.jar"));
+      assertSame(foo, pool.acquire(session2, "foo", "foo.jar"));
+      assertSame(foo, pool.get(session2, "foo"));
+      assertEquals(1, pool.getIdleRealmCount());
+
+      // bar is the least recently used idle realm
+      pool.release(session2, 1);
+      assertEquals(1, pool.getIdleRealmCount());
+      assertNull(world.getClassRealm("bar"));
+      assertSame(foo, world.getClassRealm("foo"));
+   }
+
+   @Test
+   public void testLateReleaseKeepsRealmsOfOtherSessions() throws Exception {
+      final ClassWorld world = new ClassWorld();
+      final ClassRealm foo = world.newRealm("foo");
+
+      final ExtensionRealmPool pool = new ExtensionRealmPool();
+      final Object oldSession = new Object();
+      pool.add(oldSession, "foo", "foo.jar", foo);
+
+      // the next session shares the realm before the shutdown of the old one has finished
+      final Object newSession = new Object();
+      assertSame(foo, pool.acquire(newSession, "foo", "foo.jar"));
+
+      pool.release(oldSession, 0);
+      assertSame(foo, pool.get(newSession, "foo"));
+      assertSame(foo, world.getClassRealm("foo"));
+      assertEquals(0, pool.getIdleRealmCount());
+   }
+
+   @Test
+   public void testShareRealmsWithSameClasspath() throws Exception {
+      final ClassWorld world = new ClassWorld();
+      final ClassRealm extensionRealm = world.newRealm("extension");
+      final ClassRealm realm = world.newRealm("foo");
+
+      final ExtensionRealmPool pool = new ExtensionRealmPool();
+
+      final URL[] urls = new URL[] { new URL("file:/foo.jar") };
+      final String classpathKey = pool.newClasspathKey(extensionRealm, urls);
+      assertEquals(classpathKey, pool.newClasspathKey(extensionRealm, urls.clone()));
+      assertFalse(classpathKey.equals(pool.newClasspathKey(world.newRealm("bar"), urls)));
+
+      // a recreated extension realm with the same id is a different realm
+      world.disposeRealm("extension");
+      assertFalse(classpathKey.equals(pool.newClasspathKey(world.newRealm("extension"), urls)));
+      final Object session = new Object();
+      pool.add(session, "foo", classpathKey, realm);
+      assertEquals(0, pool.getSharedRealmCount(session));
+
+      assertSame(realm, pool.acquire(session, "foo-optional", classpathKey));
+      assertSame(realm, pool.get(session, "foo-optional"));
+      assertEquals(1, pool.getSharedRealmCount(session));
+
+      pool.release(session, 0);
+      assertNull(world.getClassRealm("foo"));
+   }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class PendingShutdownsTest {
+   @Test
+   public void testAwaitParallelShutdowns() throws Exception {
+      final PendingShutdowns shutdowns = new PendingShutdowns();
+      final CountDownLatch started = new CountDownLatch(2);
+      final AtomicInteger completed = new AtomicInteger();
+
+      final Runnable shutdown = new Runnable() {
+         public void run() {
+            started.countDown();
+            try {
+               // both shutdowns must be running at the same time
+               started.await();
+               Thread.sleep(20);
+            }
+            catch (InterruptedException e) {
+               throw new IllegalStateException(e);
+            }
+            completed.incrementAndGet();
+         }
+      };
+
+      // the second shutdown must not replace the first one
+      shutdowns.start(new BootstrapThreadFactory("test-shutdown"), shutdown, 10000L);
+      shutdowns.start(new BootstrapThreadFactory("test-shutdown"), shutdown, 10000L);
+      assertTrue(shutdowns.hasShutdownHook());
+
+      assertEquals(0, shutdowns.await());
+      assertEquals(2, completed.get());
+      assertFalse(shutdowns.hasShutdownHook());
+   }
+
+   @Test
+   public void testTimeout() throws Exception {
+      final PendingShutdowns shutdowns = new PendingShutdowns();
+      final CountDownLatch release = new CountDownLatch(1);
+
+      shutdowns.start(new BootstrapThreadFactory("test-shutdown"), new Runnable() {
+         public void run() {
+            try {
+               release.await();
+            }
+            catch (InterruptedException e) {
+               throw new IllegalStateException(e);
+            }
+         }
+      }, 100L);
+
+      assertEquals(1, shutdowns.await());
+      assertTrue(shutdowns.hasShutdownHook());
+
+      release.countDown();
+      assertEquals(0, shutdowns.await());
+      assertFalse(shutdowns.hasShutdownHook());
+   }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class ProjectDescriptorFilterTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testFilter() throws IOException {
+      final File parent = writePom("pom.xml", "<project><artifactId>parent</artifactId>"
+         + "<build><plugins><plugin><artifactId>foo-plugin</artifactId></plugin></plugins></build></project>");
+      final File module = writePom("module/pom.xml",
+         "<project><parent><artifactId>parent</artifactId></parent><artifactId>module</artifactId>"
+            + "<dependencies><dependency><artifactId>bootstrapper</artifactId></dependency></dependencies></project>");
+      final File extension = writePom("extension/pom.xml",
+         "<project><artifactId>extension</artifactId><profiles><profile><build><extensions><extension>"
+            + "<artifactId>bootstrapper</artifactId></extension></extensions></build></profile></profiles></project>");
+      final File property = writePom("property/pom.xml", "<project><artifactId>property</artifactId>"
+         + "<build><plugins><plugin><artifactId>${plugin}</artifactId></plugin></plugins></build></project>");
+
+      final ProjectDescriptorFilter filter = new ProjectDescriptorFilter("bootstrapper");
+      final List<File> candidates = filter.filter(Arrays.asList(parent, module, extension, property));
+      assertEquals(Arrays.asList(extension, property), candidates);
+      assertEquals(2, filter.getEliminated());
+      assertEquals(4, filter.getScanned());
+   }
+
+   @Test
+   public void testParentChain() throws IOException {
+      writePom("pom.xml", "<project><artifactId>parent</artifactId>"
+         + "<build><plugins><plugin><artifactId>bootstrapper</artifactId></plugin></plugins></build></project>");
+      final File module = writePom("module/pom.xml",
+         "<project><parent><artifactId>parent</artifactId></parent><artifactId>module</artifactId></project>");
+      final File wrongParent = writePom("wrong/pom.xml",
+         "<project><parent><artifactId>other</artifactId></parent><artifactId>wrong</artifactId></project>");
+      final File remoteParent = writePom("remote/pom.xml", "<project><parent><artifactId>parent</artifactId>"
+         + "<relativePath /></parent><artifactId>remote</artifactId></project>");
+
+      final ProjectDescriptorFilter filter = new ProjectDescriptorFilter("bootstrapper");
+      assertTrue(filter.isCandidate(module));
+      // parent can't be found locally
+      assertTrue(filter.isCandidate(wrongParent));
+      assertTrue(filter.isCandidate(remoteParent));
+
+      final File invalid = writePom("invalid/pom.xml", "<project>");
+      assertTrue(filter.isCandidate(invalid));
+
+      final File plain = writePom("plain/pom.xml", "<project><artifactId>plain</artifactId></project>");
+      assertFalse(filter.isCandidate(plain));
+   }
+
+   private File writePom(String path, String content) throws IOException {
+      final File pom = new File(ws.getRoot(), path);
+      pom.getParentFile().mkdirs();
+      FileUtils.fileWrite(pom, "UTF-8", content);
+      return pom;
+   }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+import org.sourcepit.maven.bootstrap.core.ProjectDescriptorSink;
+
+public class ProjectDescriptorIndexTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testRevalidation() throws IOException {
+      final File baseDir = ws.newDir("tree");
+      final File root = touch(baseDir, "pom.xml");
+      final File module = touch(baseDir, "module/pom.xml");
+      touch(baseDir, "module/src/main/java/Foo.java");
+      touch(baseDir, "module/target/pom.xml");
+      age(baseDir, 60000L);
+
+      final File indexFile = new File(ws.getRoot(), "index.txt");
+      final ProjectDescriptorScanner scanner = new ProjectDescriptorScanner(ProjectDescriptorScanner.DEFAULT_INCLUDES,
+         ProjectDescriptorScanner.DEFAULT_EXCLUDES);
+
+      ProjectDescriptorIndex index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      assertEquals(Arrays.asList(module, root), scan(index, baseDir));
+      assertEquals(5, index.getRevalidated());
+      index.write(baseDir);
+
+      // warm
+      index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      assertEquals(Arrays.asList(module, root), scan(index, baseDir));
+      assertEquals(0, index.getRevalidated());
+
+      // added module, only its parent and the module itself are listed
+      final File added = touch(baseDir, "added/pom.xml");
+      age(added.getParentFile(), 30000L);
+      baseDir.setLastModified(System.currentTimeMillis() - 30000L);
+      index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      assertEquals(Arrays.asList(added, module, root), scan(index, baseDir));
+      assertEquals(2, index.getRevalidated());
+      index.write(baseDir);
+
+      // removed module
+      FileUtils.deleteDirectory(new File(baseDir, "module"));
+      baseDir.setLastModified(System.currentTimeMillis() - 15000L);
+      index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      assertEquals(Arrays.asList(added, root), scan(index, baseDir));
+      assertEquals(1, index.getRevalidated());
+      assertEquals(2, index.getDirectories());
+   }
+
+   @Test
+   public void testRacyAndOutdated() throws IOException {
+      final File baseDir = ws.newDir("tree");
+      final File root = touch(baseDir, "pom.xml");
+
+      final File indexFile = new File(ws.getRoot(), "index.txt");
+      final ProjectDescriptorScanner scanner = new ProjectDescriptorScanner(ProjectDescriptorScanner.DEFAULT_INCLUDES,
+         ProjectDescriptorScanner.DEFAULT_EXCLUDES);
+
+      ProjectDescriptorIndex index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      assertEquals(Arrays.asList(root), scan(index, baseDir));
+      index.write(baseDir);
+
+      // just modified, must be listed again
+      index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      scan(index, baseDir);
+      assertEquals(1, index.getRevalidated());
+      index.write(baseDir);
+
+      age(baseDir, 60000L);
+      index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      scan(index, baseDir);
+      index.write(baseDir);
+
+      // other patterns
+      index = ProjectDescriptorIndex.read(indexFile, baseDir, new ProjectDescriptorScanner(Arrays.asList("*.xml"),
+         ProjectDescriptorScanner.DEFAULT_EXCLUDES));
+      assertEquals(Arrays.asList(root), scan(index, baseDir));
+      assertEquals(1, index.getRevalidated());
+   }
+
+   @Test
+   public void testWriteFailure() throws IOException {
+      final File baseDir = ws.newDir("tree");
+      final File root = touch(baseDir, "pom.xml");
+
+      // a file where the directory of the index should be
+      final File indexFile = new File(touch(ws.getRoot(), "file"), "index.txt");
+      final ProjectDescriptorScanner scanner = new ProjectDescriptorScanner(ProjectDescriptorScanner.DEFAULT_INCLUDES,
+         ProjectDescriptorScanner.DEFAULT_EXCLUDES);
+
+      ProjectDescriptorIndex index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      assertEquals(Arrays.asList(root), scan(index, baseDir));
+      assertFalse(index.write(baseDir));
+
+      index = ProjectDescriptorIndex.read(indexFile, baseDir, scanner);
+      assertEquals(Arrays.asList(root), scan(index, baseDir));
+   }
+
+   private static List<File> scan(ProjectDescriptorIndex index, File baseDir) {
+      final List<File> descriptors = new ArrayList<File>();
+      index.scan(baseDir, new ProjectDescriptorSink() {
+         public void add(File descriptor) {
+            descriptors.add(descriptor);
+         }
+
+         public void skip(File descriptor) {
+         }
+      });
+      Collections.sort(descriptors);
+      return descriptors;
+   }
+
+   private static void age(File dir, long millis) {
+      final File[] children = dir.listFiles();
+      if (children != null) {
+         for (File child : children) {
+            age(child, millis);
+         }
+      }
+      dir.setLastModified(System.currentTimeMillis() - millis);
+   }
+
+   private static File touch(File baseDir, String path) throws IOException {
+      final File file = new File(baseDir, path);
+      file.getParentFile().mkdirs();
+      FileUtils.fileWrite(file, "UTF-8", "<project />");
+      return file;
+   }
+}
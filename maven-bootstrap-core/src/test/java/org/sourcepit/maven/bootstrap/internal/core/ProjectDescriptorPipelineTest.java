@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingException;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class ProjectDescriptorPipelineTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+   @After
+   public void tearDown() {
+      executor.shutdownNow();
+   }
+
+   @Test
+   public void testStreaming() throws ProjectBuildingException {
+      final StubBuilder builder = new StubBuilder(null);
+      final ProjectDescriptorPipeline pipeline = new ProjectDescriptorPipeline(executor, 2, null, builder);
+
+      final File a = new File("a/pom.xml").getAbsoluteFile();
+      final File b = new File("b/pom.xml").getAbsoluteFile();
+      final File c = new File("c/pom.xml").getAbsoluteFile();
+      final File d = new File("d/pom.xml").getAbsoluteFile();
+
+      pipeline.add(a);
+      pipeline.add(b);
+      pipeline.add(a);
+      pipeline.add(c);
+      pipeline.skip(c);
+      pipeline.add(d);
+      // skipped after its chunk was submitted
+      pipeline.skip(a);
+
+      assertEquals(Arrays.asList(b, d), getFiles(pipeline.finish()));
+      assertEquals(Arrays.asList(b, d), pipeline.getDescriptors());
+      assertEquals(2, builder.chunks.size());
+      assertEquals(Arrays.asList(a, b), builder.chunks.get(0));
+      assertEquals(Arrays.asList(d), builder.chunks.get(1));
+   }
+
+   @Test
+   public void testFallback() throws ProjectBuildingException {
+      final File a = new File("a/pom.xml").getAbsoluteFile();
+      final File b = new File("b/pom.xml").getAbsoluteFile();
+      final File c = new File("c/pom.xml").getAbsoluteFile();
+
+      final StubBuilder builder = new StubBuilder(c);
+      final ProjectDescriptorPipeline pipeline = new ProjectDescriptorPipeline(executor, 1, null, builder);
+      pipeline.add(a);
+      pipeline.add(b);
+      pipeline.add(c);
+
+      assertEquals(Arrays.asList(a, b, c), getFiles(pipeline.finish()));
+      assertEquals(Arrays.asList(a, b, c), builder.chunks.get(builder.chunks.size() - 1));
+   }
+
+   @Test
+   public void testChunksAreBuiltWithReferencedPoms() throws Exception {
+      final File parent = writePom("pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>parent</artifactId>"
+         + "<version>1</version></project>");
+      final File a = writePom("a/pom.xml", "<project><parent><groupId>org.sourcepit</groupId>"
+         + "<artifactId>parent</artifactId><version>1</version></parent><artifactId>a</artifactId>"
+         + "<dependencyManagement><dependencies><dependency><groupId>org.sourcepit</groupId><artifactId>bom</artifactId>"
+         + "<version>1</version><type>pom</type><scope>import</scope></dependency></dependencies>"
+         + "</dependencyManagement></project>");
+      final File bom = writePom("bom/pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>bom</artifactId>"
+         + "<version>1</version></project>");
+
+      // chunks are built right when they are submitted, so that the BOM is surely discovered too late
+      final ExecutorService sameThread = new AbstractExecutorService() {
+         public void execute(Runnable command) {
+            command.run();
+         }
+
+         public void shutdown() {
+         }
+
+         public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+         }
+
+         public boolean isShutdown() {
+            return false;
+         }
+
+         public boolean isTerminated() {
+            return false;
+         }
+
+         public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+         }
+      };
+
+      final StubBuilder builder = new StubBuilder(null);
+      final ProjectDescriptorPipeline pipeline = new ProjectDescriptorPipeline(sameThread, 1, null, builder);
+      pipeline.add(parent);
+      pipeline.add(a);
+      pipeline.add(bom);
+
+      assertEquals(Arrays.asList(parent, a, bom), getFiles(pipeline.finish()));
+      assertEquals(4, builder.chunks.size());
+      assertEquals(Arrays.asList(parent), builder.chunks.get(0));
+      // the parent is already known, the BOM is discovered later
+      assertEquals(Arrays.asList(parent, a), builder.chunks.get(1));
+      assertEquals(Arrays.asList(bom), builder.chunks.get(2));
+      assertEquals(Arrays.asList(parent, a, bom), builder.chunks.get(3));
+   }
+
+   private File writePom(String path, String content) throws IOException {
+      final File file = new File(ws.getRoot(), path);
+      file.getParentFile().mkdirs();
+      FileUtils.fileWrite(file, "UTF-8", content);
+      return file;
+   }
+
+   private static List<File> getFiles(List<MavenProject> projects) {
+      final List<File> files = new ArrayList<File>();
+      for (MavenProject project : projects) {
+         files.add(project.getFile());
+      }
+      return files;
+   }
+
+   private static class StubBuilder implements ProjectDescriptorPipeline.ChunkBuilder {
+      private final File unbuildableAlone;
+
+      final List<List<File>> chunks = new ArrayList<List<File>>();
+
+      StubBuilder(File unbuildableAlone) {
+         this.unbuildableAlone = unbuildableAlone;
+      }
+
+      public List<MavenProject> build(List<File> descriptors) throws ProjectBuildingException {
+         synchronized (chunks) {
+            chunks.add(new ArrayList<File>(descriptors));
+         }
+         if (descriptors.size() == 1 && descriptors.get(0).equals(unbuildableAlone)) {
+            throw new ProjectBuildingException("", "cannot build alone", unbuildableAlone);
+         }
+         final List<MavenProject> projects = new ArrayList<MavenProject>();
+         for (File descriptor : descriptors) {
+            final MavenProject project = new MavenProject();
+            project.setFile(descriptor);
+            projects.add(project);
+         }
+         return projects;
+      }
+   }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+import org.sourcepit.maven.bootstrap.core.ProjectDescriptorSink;
+
+public class ProjectDescriptorScannerTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testDefaults() throws IOException {
+      final File root = touch("pom.xml");
+      final File module = touch("module/pom.xml");
+      final File nested = touch("module/nested/pom.xml");
+      touch("module/target/classes/pom.xml");
+      touch("target/pom.xml");
+      touch(".git/pom.xml");
+      touch("other/build.xml");
+
+      final ProjectDescriptorScanner scanner = new ProjectDescriptorScanner(ProjectDescriptorScanner.DEFAULT_INCLUDES,
+         ProjectDescriptorScanner.DEFAULT_EXCLUDES);
+      assertEquals(Arrays.asList(nested, module, root), scan(scanner, null));
+      // target and .git are pruned without being listed
+      assertEquals(4, scanner.getScannedDirectories());
+   }
+
+   @Test
+   public void testParallel() throws IOException {
+      final List<File> expected = new ArrayList<File>();
+      for (int i = 0; i < 10; i++) {
+         expected.add(touch("m" + i + "/pom.xml"));
+         for (int j = 0; j < 10; j++) {
+            expected.add(touch("m" + i + "/s" + j + "/pom.xml"));
+         }
+      }
+      Collections.sort(expected);
+
+      final ProjectDescriptorScanner scanner = new ProjectDescriptorScanner(ProjectDescriptorScanner.DEFAULT_INCLUDES,
+         ProjectDescriptorScanner.DEFAULT_EXCLUDES);
+      final ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         assertEquals(expected, scan(scanner, executor));
+      }
+      finally {
+         executor.shutdownNow();
+      }
+      assertEquals(111, scanner.getScannedDirectories());
+   }
+
+   @Test
+   public void testIncludesAndExcludes() throws IOException {
+      touch("pom.xml");
+      final File module = touch("modules/a/pom.xml");
+      touch("modules/b/pom.xml");
+      final File pomless = touch("modules/c/pom-bootstrap.xml");
+      touch("samples/pom.xml");
+
+      final ProjectDescriptorScanner scanner = new ProjectDescriptorScanner(Arrays.asList("modules/*/pom*.xml"),
+         Arrays.asList("samples/", "**/b/**"));
+      assertEquals(Arrays.asList(module, pomless), scan(scanner, null));
+   }
+
+   private List<File> scan(ProjectDescriptorScanner scanner, ExecutorService executor) {
+      final List<File> descriptors = new ArrayList<File>();
+      scanner.scan(ws.getRoot(), new ProjectDescriptorSink() {
+         public synchronized void add(File descriptor) {
+            descriptors.add(descriptor);
+         }
+
+         public void skip(File descriptor) {
+         }
+      }, executor);
+      Collections.sort(descriptors);
+      return descriptors;
+   }
+
+   private File touch(String path) throws IOException {
+      final File file = new File(ws.getRoot(), path);
+      file.getParentFile().mkdirs();
+      FileUtils.fileWrite(file, "UTF-8", "<project />");
+      return file;
+   }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectSorter;
+import org.junit.Test;
+
+public class ProjectGraphExecutorTest {
+   @Test
+   public void testUpstreamProjectsFinishFirst() throws Exception {
+      final MavenProject a = newProject("a");
+      final MavenProject b = newProject("b", a);
+      final MavenProject c = newProject("c", a);
+      final MavenProject d = newProject("d", b, c);
+      final MavenProject e = newProject("e");
+
+      final ProjectGraphExecutor executor = new ProjectGraphExecutor(new ProjectSorter(Arrays.asList(d, c, e, b, a)));
+
+      final Set<MavenProject> finished = Collections.newSetFromMap(new ConcurrentHashMap<MavenProject, Boolean>());
+      final List<String> violations = Collections.synchronizedList(new ArrayList<String>());
+
+      executor.execute(4, new ProjectGraphExecutor.ProjectTask() {
+         public void execute(MavenProject project) {
+            for (Dependency dependency : project.getDependencies()) {
+               if (!isFinished(dependency.getArtifactId())) {
+                  violations.add(project.getArtifactId() + " started before " + dependency.getArtifactId());
+               }
+            }
+            try {
+               Thread.sleep(10);
+            }
+            catch (InterruptedException e) {
+               throw new IllegalStateException(e);
+            }
+            finished.add(project);
+         }
+
+         private boolean isFinished(String artifactId) {
+            for (MavenProject project : finished) {
+               if (artifactId.equals(project.getArtifactId())) {
+                  return true;
+               }
+            }
+            return false;
+         }
+      });
+
+      assertEquals(Collections.emptyList(), violations);
+      assertEquals(5, finished.size());
+   }
+
+   @Test
+   public void testSequential() throws Exception {
+      final MavenProject a = newProject("a");
+      final MavenProject b = newProject("b", a);
+      final MavenProject c = newProject("c", b);
+
+      final ProjectGraphExecutor executor = new ProjectGraphExecutor(new ProjectSorter(Arrays.asList(c, b, a)));
+
+      final List<MavenProject> executed = new ArrayList<MavenProject>();
+      executor.execute(1, new ProjectGraphExecutor.ProjectTask() {
+         public void execute(MavenProject project) {
+            executed.add(project);
+         }
+      });
+
+      assertEquals(Arrays.asList(a, b, c), executed);
+   }
+
+   @Test
+   public void testFailurePropagates() throws Exception {
+      final MavenProject a = newProject("a");
+      final MavenProject b = newProject("b", a);
+
+      final ProjectGraphExecutor executor = new ProjectGraphExecutor(new ProjectSorter(Arrays.asList(a, b)));
+
+      final List<MavenProject> executed = Collections.synchronizedList(new ArrayList<MavenProject>());
+      try {
+         executor.execute(2, new ProjectGraphExecutor.ProjectTask() {
+            public void execute(MavenProject project) {
+               executed.add(project);
+               throw new IllegalArgumentException(project.getArtifactId());
+            }
+         });
+         fail();
+      }
+      catch (IllegalArgumentException e) {
+         assertEquals("a", e.getMessage());
+      }
+      assertEquals(1, executed.size());
+   }
+
+   static MavenProject newProject(String artifactId, MavenProject... upstreamProjects) {
+      final Model model = new Model();
+      model.setGroupId("org.sourcepit");
+      model.setArtifactId(artifactId);
+      model.setVersion("1");
+      for (MavenProject upstreamProject : upstreamProjects) {
+         final Dependency dependency = new Dependency();
+         dependency.setGroupId(upstreamProject.getGroupId());
+         dependency.setArtifactId(upstreamProject.getArtifactId());
+         dependency.setVersion(upstreamProject.getVersion());
+         model.addDependency(dependency);
+      }
+      return new MavenProject(model);
+   }
+}
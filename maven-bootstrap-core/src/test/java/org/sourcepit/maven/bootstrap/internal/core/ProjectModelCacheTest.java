@@ -0,0 +1,297 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.MavenArtifactRepository;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Profile;
+import org.apache.maven.model.Repository;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+import org.sourcepit.maven.bootstrap.internal.core.ProjectModelCache.CachedModel;
+
+public class ProjectModelCacheTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testFingerprint() throws IOException {
+      final File parentPom = writePom(new File(ws.getRoot(), "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></project>");
+      final File pom = writePom(new File(ws.getRoot(), "module/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+         + "<artifactId>module</artifactId><name>${foo}</name></project>");
+
+      final ProjectModelCache cache = new ProjectModelCache(new File(ws.getRoot(), "cache"), 10);
+
+      final ProjectBuildingRequest request = newRequest();
+      final String fingerprint = cache.fingerprint(pom, request);
+      assertNotNull(fingerprint);
+      assertEquals(fingerprint, cache.fingerprint(pom, newRequest()));
+
+      // unreferenced properties don't matter
+      request.getUserProperties().setProperty("bar", "bar");
+      assertEquals(fingerprint, cache.fingerprint(pom, request));
+
+      // referenced properties do
+      request.getUserProperties().setProperty("foo", "foo");
+      assertFalse(fingerprint.equals(cache.fingerprint(pom, request)));
+
+      // parent changes too
+      writePom(parentPom, "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version>"
+         + "<packaging>pom</packaging></project>");
+      assertFalse(fingerprint.equals(cache.fingerprint(pom, newRequest())));
+   }
+
+   @Test
+   public void testNotCacheable() throws IOException {
+      final File pom = writePom(new File(ws.getRoot(), "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>foo</artifactId><version>1</version>"
+         + "<profiles><profile><id>p</id><activation><file><exists>foo</exists></file></activation></profile>"
+         + "</profiles></project>");
+
+      final ProjectModelCache cache = new ProjectModelCache(new File(ws.getRoot(), "cache"), 10);
+      assertNull(cache.fingerprint(pom, newRequest()));
+   }
+
+   @Test
+   public void testFingerprintLocation() throws IOException {
+      final String content = "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>foo</artifactId><version>1</version></project>";
+      final File pom1 = writePom(new File(ws.getRoot(), "a/pom.xml"), content);
+      final File pom2 = writePom(new File(ws.getRoot(), "b/pom.xml"), content);
+
+      final ProjectModelCache cache = new ProjectModelCache(new File(ws.getRoot(), "cache"), 10);
+      assertFalse(cache.fingerprint(pom1, newRequest()).equals(cache.fingerprint(pom2, newRequest())));
+      assertEquals(cache.fingerprint(pom1, newRequest()),
+         cache.fingerprint(new File(ws.getRoot(), "b/../a/pom.xml"), newRequest()));
+   }
+
+   @Test
+   public void testFingerprintRepositories() throws IOException {
+      final File pom = writePom(new File(ws.getRoot(), "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>foo</artifactId><version>1</version></project>");
+
+      final ProjectModelCache cache = new ProjectModelCache(new File(ws.getRoot(), "cache"), 10);
+      final String fingerprint = cache.fingerprint(pom, newRequest());
+
+      final ProjectBuildingRequest request = newRequest();
+      request.setRemoteRepositories(Collections.<ArtifactRepository> singletonList(new MavenArtifactRepository(
+         "central", "http://localhost/central", null, null, null)));
+      assertFalse(fingerprint.equals(cache.fingerprint(pom, request)));
+
+      // repositories from settings profiles
+      final Repository repository = new Repository();
+      repository.setId("central");
+      repository.setUrl("http://localhost/mirror");
+      final Profile profile = new Profile();
+      profile.setId("settings");
+      profile.addRepository(repository);
+      final ProjectBuildingRequest profileRequest = newRequest();
+      profileRequest.setProfiles(Collections.singletonList(profile));
+      final String profileFingerprint = cache.fingerprint(pom, profileRequest);
+      assertFalse(fingerprint.equals(profileFingerprint));
+
+      repository.setUrl("http://localhost/other-mirror");
+      assertFalse(profileFingerprint.equals(cache.fingerprint(pom, profileRequest)));
+   }
+
+   @Test
+   public void testFingerprintReactorBom() throws IOException {
+      final File bomPom = writePom(new File(ws.getRoot(), "bom/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>bom</artifactId><version>1-SNAPSHOT</version>"
+         + "<packaging>pom</packaging></project>");
+      final File pom = writePom(new File(ws.getRoot(), "module/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>module</artifactId><version>1-SNAPSHOT</version>"
+         + "<dependencyManagement><dependencies><dependency><groupId>org.sourcepit</groupId>"
+         + "<artifactId>bom</artifactId><version>${project.version}</version><type>pom</type><scope>import</scope>"
+         + "</dependency></dependencies></dependencyManagement></project>");
+
+      final ProjectModelCache cache = new ProjectModelCache(new File(ws.getRoot(), "cache"), 10);
+
+      // a snapshot BOM that is neither in the reactor nor in the local repository can't be fingerprinted
+      assertNull(cache.fingerprint(pom, newRequest()));
+
+      final ProjectReferences reactor = new ProjectReferences(Arrays.asList(bomPom, pom));
+      final String fingerprint = cache.fingerprint(pom, newRequest(), reactor);
+      assertNotNull(fingerprint);
+
+      writePom(bomPom, "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>bom</artifactId><version>1-SNAPSHOT</version>"
+         + "<packaging>pom</packaging><dependencyManagement><dependencies><dependency><groupId>org.sourcepit</groupId>"
+         + "<artifactId>foo</artifactId><version>1</version></dependency></dependencies></dependencyManagement>"
+         + "</project>");
+      assertFalse(fingerprint.equals(cache.fingerprint(pom, newRequest(), reactor)));
+   }
+
+   @Test
+   public void testFingerprintIgnoresMismatchingParent() throws IOException {
+      final File parentPom = writePom(new File(ws.getRoot(), "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>2</version></project>");
+      final File pom = writePom(new File(ws.getRoot(), "module/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+         + "<artifactId>module</artifactId></project>");
+
+      final File localRepository = new File(ws.getRoot(), "repository");
+      writePom(new File(localRepository, "org/sourcepit/parent/1/parent-1.pom"), "<project>"
+         + "<modelVersion>4.0.0</modelVersion><groupId>org.sourcepit</groupId><artifactId>parent</artifactId>"
+         + "<version>1</version></project>");
+
+      final ProjectModelCache cache = new ProjectModelCache(new File(ws.getRoot(), "cache"), 10);
+      final String fingerprint = cache.fingerprint(pom, newRequest(localRepository));
+      assertNotNull(fingerprint);
+
+      // version 1 of the parent comes from a repository, the local parent doesn't matter
+      writePom(parentPom, "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>2</version>"
+         + "<packaging>pom</packaging></project>");
+      assertEquals(fingerprint, cache.fingerprint(pom, newRequest(localRepository)));
+   }
+
+   @Test
+   public void testFingerprintRepositoryParent() throws IOException {
+      final File pom = writePom(new File(ws.getRoot(), "module/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+         + "<artifactId>module</artifactId></project>");
+
+      final ProjectModelCache cache = new ProjectModelCache(new File(ws.getRoot(), "cache"), 10);
+      final File localRepository = new File(ws.getRoot(), "repository");
+      // the parent isn't downloaded yet
+      assertNull(cache.fingerprint(pom, newRequest(localRepository)));
+
+      writePom(new File(localRepository, "org/sourcepit/parent/1/parent-1.pom"), "<project>"
+         + "<modelVersion>4.0.0</modelVersion><groupId>org.sourcepit</groupId><artifactId>parent</artifactId>"
+         + "<version>1</version><name>${foo}</name><profiles><profile><id>p</id><activation><property>"
+         + "<name>bar</name></property></activation></profile></profiles></project>");
+      final String fingerprint = cache.fingerprint(pom, newRequest(localRepository));
+      assertNotNull(fingerprint);
+
+      // properties referenced or used for profile activation by the repository parent matter
+      ProjectBuildingRequest request = newRequest(localRepository);
+      request.getUserProperties().setProperty("foo", "foo");
+      assertFalse(fingerprint.equals(cache.fingerprint(pom, request)));
+
+      request = newRequest(localRepository);
+      request.getSystemProperties().setProperty("bar", "bar");
+      assertFalse(fingerprint.equals(cache.fingerprint(pom, request)));
+   }
+
+   @Test
+   public void testGetPutAndTrim() {
+      final File cacheDir = new File(ws.getRoot(), "cache");
+      final ProjectModelCache cache = new ProjectModelCache(cacheDir, 2);
+      assertNull(cache.get("a"));
+
+      long lastModified = 100000L;
+      for (String fingerprint : new String[] { "a", "b", "c" }) {
+         final Model model = new Model();
+         model.setArtifactId(fingerprint);
+         cache.put(fingerprint, model, Collections.singletonMap("org.sourcepit:" + fingerprint + ":1",
+            Arrays.asList("p1", "p2")));
+         new File(cacheDir, fingerprint + ".pom").setLastModified(lastModified += 100000L);
+      }
+      final CachedModel cachedModel = cache.get("a");
+      assertEquals("a", cachedModel.getModel().getArtifactId());
+      assertEquals(Arrays.asList("p1", "p2"), cachedModel.getInjectedProfileIds().get("org.sourcepit:a:1"));
+      assertEquals(1, cache.getHits());
+      assertEquals(1, cache.getMisses());
+
+      cache.trim();
+
+      // b is the least recently used one
+      assertNull(cache.get("b"));
+      assertNotNull(cache.get("a"));
+      assertNotNull(cache.get("c"));
+      assertTrue(cacheDir.list().length == 2);
+   }
+
+   private static ProjectBuildingRequest newRequest() {
+      final ProjectBuildingRequest request = new DefaultProjectBuildingRequest();
+      request.setUserProperties(new Properties());
+      request.setSystemProperties(new Properties());
+      return request;
+   }
+
+   private static ProjectBuildingRequest newRequest(final File localRepository) {
+      final ProjectBuildingRequest request = newRequest();
+      final LocalRepositoryManager localRepositoryManager = (LocalRepositoryManager) Proxy.newProxyInstance(
+         ProjectModelCacheTest.class.getClassLoader(), new Class<?>[] { LocalRepositoryManager.class },
+         new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+               if ("getRepository".equals(method.getName())) {
+                  return new LocalRepository(localRepository);
+               }
+               if ("getPathForLocalArtifact".equals(method.getName())) {
+                  final Artifact artifact = (Artifact) args[0];
+                  return artifact.getGroupId().replace('.', '/') + "/" + artifact.getArtifactId() + "/"
+                     + artifact.getVersion() + "/" + artifact.getArtifactId() + "-" + artifact.getVersion() + "."
+                     + artifact.getExtension();
+               }
+               throw new UnsupportedOperationException(method.getName());
+            }
+         });
+      final DefaultRepositorySystemSession repositorySession = new DefaultRepositorySystemSession();
+      repositorySession.setLocalRepositoryManager(localRepositoryManager);
+      request.setRepositorySession(repositorySession);
+      return request;
+   }
+
+   private static File writePom(File file, String content) throws IOException {
+      file.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+      return file;
+   }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class ProjectSelectorTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   private File parent, a, b, c, d;
+
+   private List<File> newReactor() throws IOException {
+      parent = writePom("pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>parent</artifactId></project>");
+      a = writePom("a/pom.xml", "<project><parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId>"
+         + "</parent><artifactId>a</artifactId></project>");
+      b = writePom("b/pom.xml", "<project><parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId>"
+         + "</parent><artifactId>b</artifactId><dependencies><dependency><groupId>${project.groupId}</groupId>"
+         + "<artifactId>a</artifactId></dependency></dependencies></project>");
+      c = writePom("c/pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>c</artifactId>"
+         + "<build><plugins><plugin><groupId>org.sourcepit</groupId><artifactId>b</artifactId></plugin>"
+         + "</plugins></build></project>");
+      d = writePom("d/pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>d</artifactId></project>");
+      return Arrays.asList(parent, a, b, c, d);
+   }
+
+   @Test
+   public void testSelectedProjects() throws IOException {
+      final List<File> reactor = newReactor();
+
+      final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+      request.setSelectedProjects(Collections.singletonList(":c"));
+      assertEquals(Arrays.asList(parent, a, b, c), select(reactor, request));
+
+      request.setSelectedProjects(Arrays.asList("d", "!c"));
+      assertEquals(Arrays.asList(d), select(reactor, request));
+
+      request.setSelectedProjects(Arrays.asList("org.sourcepit:a"));
+      request.setMakeBehavior(MavenExecutionRequest.REACTOR_MAKE_DOWNSTREAM);
+      assertEquals(Arrays.asList(parent, a, b, c), select(reactor, request));
+
+      // unknown projects can't be trimmed safely
+      request.setSelectedProjects(Arrays.asList(":foo"));
+      assertEquals(reactor, select(reactor, request));
+   }
+
+   @Test
+   public void testResumeFrom() throws IOException {
+      final List<File> reactor = newReactor();
+
+      final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+      request.setResumeFrom(":d");
+      assertEquals(Arrays.asList(d), select(reactor, request));
+
+      request.setResumeFrom(":c");
+      assertEquals(Arrays.asList(parent, a, b, c, d), select(reactor, request));
+
+      request.setResumeFrom(":b");
+      request.setSelectedProjects(Arrays.asList(":b"));
+      assertEquals(Arrays.asList(parent, a, b), select(reactor, request));
+   }
+
+   @Test
+   public void testUnresolvableCoordinates() throws IOException {
+      final List<File> reactor = newReactor();
+      final File e = writePom("e/pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>e</artifactId>"
+         + "<dependencies><dependency><groupId>${foo}</groupId><artifactId>a</artifactId></dependency>"
+         + "</dependencies></project>");
+      final List<File> descriptors = new ArrayList<File>(reactor);
+      descriptors.add(e);
+
+      final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+      request.setSelectedProjects(Collections.singletonList(":d"));
+      assertEquals(descriptors, select(descriptors, request));
+   }
+
+   @Test
+   public void testProfileReferences() throws IOException {
+      final List<File> reactor = newReactor();
+      final File e = writePom("e/pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>e</artifactId>"
+         + "<profiles><profile><id>p1</id><dependencies><dependency><groupId>org.sourcepit</groupId>"
+         + "<artifactId>d</artifactId></dependency></dependencies></profile><profile><id>p2</id><build><plugins>"
+         + "<plugin><groupId>org.sourcepit</groupId><artifactId>a</artifactId></plugin></plugins></build>"
+         + "</profile></profiles></project>");
+      final List<File> descriptors = new ArrayList<File>(reactor);
+      descriptors.add(e);
+
+      // profile activation is unknown, so all profiles count
+      final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+      request.setSelectedProjects(Collections.singletonList(":e"));
+      assertEquals(Arrays.asList(parent, a, d, e), select(descriptors, request));
+
+      // properties overridden by profiles are ambiguous
+      writePom("e/pom.xml", "<project><groupId>org.sourcepit</groupId><artifactId>e</artifactId>"
+         + "<properties><dep>a</dep></properties><dependencies><dependency><groupId>org.sourcepit</groupId>"
+         + "<artifactId>${dep}</artifactId></dependency></dependencies><profiles><profile><id>p1</id>"
+         + "<properties><dep>d</dep></properties></profile></profiles></project>");
+      assertEquals(descriptors, select(descriptors, request));
+   }
+
+   private List<File> select(List<File> descriptors, MavenExecutionRequest request) {
+      return new ProjectSelector(ws.getRoot()).select(descriptors, request);
+   }
+
+   private File writePom(String path, String content) throws IOException {
+      final File file = new File(ws.getRoot(), path);
+      file.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+      return file;
+   }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class ProjectSharingTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testShare() throws IOException {
+      final File parentPom = writePom(new File(ws.getRoot(), "pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></project>");
+      final File pom = writePom(new File(ws.getRoot(), "module/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<parent><groupId>org.sourcepit</groupId><artifactId>parent</artifactId><version>1</version></parent>"
+         + "<artifactId>module</artifactId><name>${foo}</name></project>");
+      parentPom.setLastModified(100000L);
+      pom.setLastModified(100000L);
+
+      final Model model = new Model();
+      model.setArtifactId("module");
+      final MavenProject project = new MavenProject(model);
+      project.setFile(pom);
+
+      final ProjectReferences reactor = new ProjectReferences(Arrays.asList(parentPom, pom));
+      final ProjectSharing sharing = new ProjectSharing();
+
+      final MavenProject copy = sharing.share(project, newRequest("bar"), reactor, 200000L, newRequest("bar"),
+         reactor);
+      assertNotNull(copy);
+      assertNotSame(project, copy);
+      assertNotSame(project.getModel(), copy.getModel());
+      assertEquals("module", copy.getArtifactId());
+
+      // referenced property differs
+      assertNull(sharing.share(project, newRequest("bar"), reactor, 200000L, newRequest("baz"), reactor));
+
+      // parent modified after the project was built
+      parentPom.setLastModified(300000L);
+      assertNull(sharing.share(project, newRequest("bar"), reactor, 200000L, newRequest("bar"), reactor));
+
+      assertEquals(1, sharing.getShared());
+      assertEquals(2, sharing.getRejected());
+   }
+
+   @Test
+   public void testShareWithReactorBom() throws IOException {
+      final File bomPom = writePom(new File(ws.getRoot(), "bom/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>bom</artifactId><version>1</version></project>");
+      final File pom = writePom(new File(ws.getRoot(), "module/pom.xml"), "<project><modelVersion>4.0.0</modelVersion>"
+         + "<groupId>org.sourcepit</groupId><artifactId>module</artifactId><version>1</version>"
+         + "<dependencyManagement><dependencies><dependency><groupId>org.sourcepit</groupId>"
+         + "<artifactId>bom</artifactId><version>1</version><type>pom</type><scope>import</scope></dependency>"
+         + "</dependencies></dependencyManagement></project>");
+      bomPom.setLastModified(100000L);
+      pom.setLastModified(100000L);
+
+      final Model model = new Model();
+      model.setArtifactId("module");
+      final MavenProject project = new MavenProject(model);
+      project.setFile(pom);
+
+      final ProjectReferences reactor = new ProjectReferences(Arrays.asList(bomPom, pom));
+      final ProjectSharing sharing = new ProjectSharing();
+
+      assertNotNull(sharing.share(project, newRequest("bar"), reactor, 200000L, newRequest("bar"), reactor));
+
+      // the BOM would be resolved from a repository in the target reactor
+      final ProjectReferences otherReactor = new ProjectReferences(Arrays.asList(pom));
+      assertNull(sharing.share(project, newRequest("bar"), reactor, 200000L, newRequest("bar"), otherReactor));
+      assertNull(sharing.share(project, newRequest("bar"), reactor, 200000L, newRequest("bar"), null));
+
+      // BOM modified after the project was built
+      bomPom.setLastModified(300000L);
+      assertNull(sharing.share(project, newRequest("bar"), reactor, 200000L, newRequest("bar"), reactor));
+
+      assertEquals(1, sharing.getShared());
+      assertEquals(3, sharing.getRejected());
+   }
+
+   private static ProjectBuildingRequest newRequest(String foo) {
+      final ProjectBuildingRequest request = new DefaultProjectBuildingRequest();
+      final Properties userProperties = new Properties();
+      userProperties.setProperty("foo", foo);
+      request.setUserProperties(userProperties);
+      request.setSystemProperties(new Properties());
+      return request;
+   }
+
+   private static File writePom(File file, String content) throws IOException {
+      file.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         out.write(content.getBytes("UTF-8"));
+      }
+      finally {
+         out.close();
+      }
+      return file;
+   }
+}
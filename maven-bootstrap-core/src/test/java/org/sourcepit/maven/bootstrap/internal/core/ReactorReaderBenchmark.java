@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.artifact.Artifact;
+
+/**
+ * Compares looking up reactor artifacts by GAV key and repository conflict ids and checking their files on every call
+ * (the former implementation) with the precomputed index of {@link ReactorReader}. Run manually, e.g. from the IDE:
+ * 
+ * <pre>
+ * java ReactorReaderBenchmark [projects] [attachments] [iterations]
+ * </pre>
+ */
+public class ReactorReaderBenchmark {
+   public static void main(String[] args) throws Exception {
+      final int projectCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+      final int attachments = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+      final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+
+      final File artifactFile = File.createTempFile("artifact", ".jar");
+      artifactFile.deleteOnExit();
+
+      final Map<String, MavenProject> projects = new HashMap<String, MavenProject>();
+      final Artifact[] requests = new Artifact[projectCount];
+      for (int i = 0; i < projectCount; i++) {
+         final String artifactId = "project-" + i;
+         final Model model = new Model();
+         model.setGroupId("org.example");
+         model.setArtifactId(artifactId);
+         model.setVersion("1.0.0-SNAPSHOT");
+         final MavenProject project = new MavenProject(model);
+         project.setArtifact(newArtifact(artifactId, null, artifactFile));
+         for (int j = 0; j < attachments; j++) {
+            project.addAttachedArtifact(newArtifact(artifactId, "classifier-" + j, artifactFile));
+         }
+         projects.put(ArtifactUtils.key(project.getGroupId(), artifactId, project.getVersion()), project);
+         // worst case, the last attached artifact is requested
+         requests[i] = new org.eclipse.aether.artifact.DefaultArtifact("org.example", artifactId, attachments == 0
+            ? ""
+            : "classifier-" + (attachments - 1), "jar", "1.0.0-SNAPSHOT");
+      }
+
+      final ReactorReader reader = new ReactorReader(projects);
+
+      System.out.println(projectCount + " projects with " + attachments + " attached artifacts each");
+
+      for (int round = 0; round < 2; round++) {
+         final String phase = round == 0 ? "warmup " : "measure";
+
+         long start = System.nanoTime();
+         int found = 0;
+         for (int i = 0; i < iterations; i++) {
+            for (Artifact request : requests) {
+               if (findByConflictId(projects, request) != null) {
+                  found++;
+               }
+            }
+         }
+         System.out.println(phase + " GAV key + conflict ids: " + toNanos(start, iterations * projectCount)
+            + " ns/op (" + found + " found)");
+
+         start = System.nanoTime();
+         found = 0;
+         for (int i = 0; i < iterations; i++) {
+            for (Artifact request : requests) {
+               if (reader.findArtifact(request) != null) {
+                  found++;
+               }
+            }
+         }
+         System.out.println(phase + " ReactorReader: " + toNanos(start, iterations * projectCount) + " ns/op ("
+            + found + " found)");
+      }
+   }
+
+   private static double toNanos(long start, int operations) {
+      return (System.nanoTime() - start) / (double) operations;
+   }
+
+   private static DefaultArtifact newArtifact(String artifactId, String classifier, File file) {
+      final DefaultArtifact artifact = new DefaultArtifact("org.example", artifactId, "1.0.0-SNAPSHOT", null, "jar",
+         classifier, new DefaultArtifactHandler("jar"));
+      artifact.setFile(file);
+      return artifact;
+   }
+
+   private static File findByConflictId(Map<String, MavenProject> projects, Artifact artifact) {
+      final MavenProject project = projects.get(ArtifactUtils.key(artifact.getGroupId(), artifact.getArtifactId(),
+         artifact.getVersion()));
+      if (project == null) {
+         return null;
+      }
+      final String conflictId = getConflictId(artifact);
+      org.apache.maven.artifact.Artifact match = null;
+      if (conflictId.equals(getConflictId(project.getArtifact()))) {
+         match = project.getArtifact();
+      }
+      else {
+         for (org.apache.maven.artifact.Artifact attached : project.getAttachedArtifacts()) {
+            if (conflictId.equals(getConflictId(attached))) {
+               match = attached;
+               break;
+            }
+         }
+      }
+      return match != null && match.getFile() != null && match.getFile().exists() ? match.getFile() : null;
+   }
+
+   private static String getConflictId(org.apache.maven.artifact.Artifact artifact) {
+      final StringBuilder buffer = new StringBuilder(128);
+      buffer.append(artifact.getGroupId());
+      buffer.append(':').append(artifact.getArtifactId());
+      buffer.append(':').append(artifact.getArtifactHandler().getExtension());
+      if (artifact.hasClassifier()) {
+         buffer.append(':').append(artifact.getClassifier());
+      }
+      return buffer.toString();
+   }
+
+   private static String getConflictId(Artifact artifact) {
+      final StringBuilder buffer = new StringBuilder(128);
+      buffer.append(artifact.getGroupId());
+      buffer.append(':').append(artifact.getArtifactId());
+      buffer.append(':').append(artifact.getExtension());
+      if (artifact.getClassifier().length() > 0) {
+         buffer.append(':').append(artifact.getClassifier());
+      }
+      return buffer.toString();
+   }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class ReactorReaderTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testFindArtifact() throws IOException {
+      final MavenProject project = newProject("org.example", "foo", "1.0");
+      project.getArtifact().setFile(newFile("foo.jar"));
+
+      final ReactorReader reader = newReader(project, newProject("org.example", "bar", "1.0"));
+
+      assertEquals(project.getArtifact().getFile(),
+         reader.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:1.0")));
+      assertEquals(project.getFile(),
+         reader.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:pom:1.0")));
+      assertNull(reader.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:2.0")));
+      assertNull(reader.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.other:foo:jar:1.0")));
+      assertNull(reader.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:zip:1.0")));
+
+      // attached after the reader was created
+      final org.eclipse.aether.artifact.DefaultArtifact sources = new org.eclipse.aether.artifact.DefaultArtifact(
+         "org.example:foo:jar:sources:1.0");
+      assertNull(reader.findArtifact(sources));
+      final DefaultArtifact attached = newArtifact("org.example", "foo", "1.0", "sources");
+      attached.setFile(newFile("foo-sources.jar"));
+      project.addAttachedArtifact(attached);
+      assertEquals(attached.getFile(), reader.findArtifact(sources));
+
+      assertEquals(Arrays.asList("1.0"),
+         reader.findVersions(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:2.0")));
+   }
+
+   @Test
+   public void testArtifactFileChanges() throws IOException {
+      final MavenProject project = newProject("org.example", "foo", "1.0");
+      final ReactorReader reader = newReader(project);
+      final org.eclipse.aether.artifact.DefaultArtifact jar = new org.eclipse.aether.artifact.DefaultArtifact(
+         "org.example:foo:jar:1.0");
+
+      final File file = new File(ws.getRoot(), "foo.jar");
+      project.getArtifact().setFile(file);
+      assertNull(reader.findArtifact(jar));
+
+      // missing files are checked again
+      FileUtils.fileWrite(file, "UTF-8", "foo");
+      assertEquals(file, reader.findArtifact(jar));
+
+      final File repackaged = newFile("foo-repackaged.jar");
+      project.getArtifact().setFile(repackaged);
+      assertEquals(repackaged, reader.findArtifact(jar));
+   }
+
+   @Test
+   public void testAttachedArtifactsChanges() throws IOException {
+      final List<Artifact> attachedArtifacts = new ArrayList<Artifact>();
+      final Model model = new Model();
+      model.setGroupId("org.example");
+      model.setArtifactId("foo");
+      model.setVersion("1.0");
+      // like newer Maven versions, hands out a new list on every call
+      final MavenProject project = new MavenProject(model) {
+         @Override
+         public List<Artifact> getAttachedArtifacts() {
+            return new ArrayList<Artifact>(attachedArtifacts);
+         }
+      };
+      project.setFile(new File(ws.getRoot(), "foo/pom.xml"));
+      project.setArtifact(newArtifact("org.example", "foo", "1.0", null));
+      final File jarFile = newFile("foo.jar");
+      project.getArtifact().setFile(jarFile);
+
+      final DefaultArtifact sources = newArtifact("org.example", "foo", "1.0", "sources");
+      sources.setFile(newFile("foo-sources.jar"));
+      attachedArtifacts.add(sources);
+
+      final ReactorReader reader = newReader(project);
+      final org.eclipse.aether.artifact.DefaultArtifact jar = new org.eclipse.aether.artifact.DefaultArtifact(
+         "org.example:foo:jar:1.0");
+      final org.eclipse.aether.artifact.DefaultArtifact tests = new org.eclipse.aether.artifact.DefaultArtifact(
+         "org.example:foo:jar:tests:1.0");
+      assertEquals(jarFile, reader.findArtifact(jar));
+      assertNull(reader.findArtifact(tests));
+
+      // existing files are remembered, even though the list of attached artifacts is a new one
+      jarFile.delete();
+      assertEquals(jarFile, reader.findArtifact(jar));
+
+      // replaced in place
+      final DefaultArtifact testJar = newArtifact("org.example", "foo", "1.0", "tests");
+      testJar.setFile(newFile("foo-tests.jar"));
+      attachedArtifacts.set(0, testJar);
+      assertEquals(testJar.getFile(), reader.findArtifact(tests));
+      assertNull(reader.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact(
+         "org.example:foo:jar:sources:1.0")));
+      assertEquals(jarFile, reader.findArtifact(jar));
+   }
+
+   @Test
+   public void testExecutionProject() throws IOException {
+      final MavenProject project = newProject("org.example", "foo", "1.0");
+      final MavenProject executionProject = newProject("org.example", "foo", "1.0");
+      executionProject.getArtifact().setFile(newFile("foo.jar"));
+      project.setExecutionProject(executionProject);
+
+      final ReactorReader reader = newReader(project);
+      assertEquals(executionProject.getArtifact().getFile(),
+         reader.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:1.0")));
+   }
+
+   private File newFile(String name) throws IOException {
+      final File file = new File(ws.getRoot(), name);
+      FileUtils.fileWrite(file, "UTF-8", name);
+      return file;
+   }
+
+   private static ReactorReader newReader(MavenProject... projects) {
+      final Map<String, MavenProject> projectMap = new HashMap<String, MavenProject>();
+      for (MavenProject project : projects) {
+         projectMap.put(ArtifactUtils.key(project.getGroupId(), project.getArtifactId(), project.getVersion()),
+            project);
+      }
+      return new ReactorReader(projectMap);
+   }
+
+   private MavenProject newProject(String groupId, String artifactId, String version) {
+      final Model model = new Model();
+      model.setGroupId(groupId);
+      model.setArtifactId(artifactId);
+      model.setVersion(version);
+      final MavenProject project = new MavenProject(model);
+      project.setFile(new File(ws.getRoot(), artifactId + "/pom.xml"));
+      project.setArtifact(newArtifact(groupId, artifactId, version, null));
+      return project;
+   }
+
+   private static DefaultArtifact newArtifact(String groupId, String artifactId, String version, String classifier) {
+      return new DefaultArtifact(groupId, artifactId, version, null, "jar", classifier, new DefaultArtifactHandler(
+         "jar"));
+   }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.sourcepit.maven.bootstrap.internal.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.artifact.ArtifactUtils;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.aether.artifact.Artifact;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sourcepit.common.testing.Environment;
+import org.sourcepit.common.testing.Workspace;
+
+public class WorkspaceIndexTest {
+   private final Environment env = Environment.get("env-test.properties");
+
+   @Rule
+   public Workspace ws = newWorkspace();
+
+   protected Workspace newWorkspace() {
+      return new Workspace(new File(env.getBuildDir(), "test-ws"), false);
+   }
+
+   @Test
+   public void testPrecedence() throws IOException {
+      final MavenProject boot = newProject("foo", "1.0", "boot-foo.jar");
+      final MavenProject actual = newProject("foo", "1.0", "actual-foo.jar");
+      final MavenProject actualBar = newProject("bar", "1.0", "actual-bar.jar");
+      final MavenProject ide = newProject("baz", "1.0", "ide-baz.jar");
+
+      final WorkspaceIndex index = new WorkspaceIndex(toMap(boot), Arrays.asList(actual, actualBar), new ReactorReader(
+         toMap(ide)));
+
+      final Artifact foo = new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:1.0");
+      assertEquals(boot.getArtifact().getFile(), index.findArtifact(foo));
+      assertEquals(actualBar.getArtifact().getFile(),
+         index.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:bar:jar:1.0")));
+      assertEquals(2, index.getHits());
+      assertEquals(0, index.getMisses());
+
+      assertEquals(ide.getArtifact().getFile(),
+         index.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:baz:jar:1.0")));
+      assertNull(index.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:2.0")));
+      assertEquals(2, index.getHits());
+      assertEquals(2, index.getMisses());
+
+      assertEquals(Arrays.asList("1.0"), index.findVersions(foo));
+      assertEquals("reactor+reactor", index.getRepository().getContentType());
+   }
+
+   @Test
+   public void testFallbackToActualProject() throws IOException {
+      final MavenProject boot = newProject("foo", "1.0", "boot-foo.jar");
+      boot.getArtifact().setFile(null);
+      final MavenProject actual = newProject("foo", "1.0", "actual-foo.jar");
+      final MavenProject ide = newProject("bar", "1.0", "ide-bar.jar");
+
+      final WorkspaceIndex index = new WorkspaceIndex(toMap(boot), Arrays.asList(actual), new ReactorReader(
+         toMap(ide)));
+
+      // the boot project isn't packaged, so the actual one is asked
+      assertEquals(actual.getArtifact().getFile(),
+         index.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:1.0")));
+      assertEquals(Arrays.asList("1.0"),
+         index.findVersions(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:1.0")));
+
+      // without actual projects, e.g. if the actual reactor isn't built yet, the delegate is asked
+      final WorkspaceIndex bootOnly = new WorkspaceIndex(toMap(boot), Collections.<MavenProject> emptyList(),
+         new ReactorReader(toMap(actual)));
+      assertEquals(actual.getArtifact().getFile(),
+         bootOnly.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:1.0")));
+      assertEquals(0, bootOnly.getHits());
+      assertEquals(1, bootOnly.getMisses());
+   }
+
+   @Test
+   public void testWithoutDelegate() throws IOException {
+      final MavenProject boot = newProject("foo", "1.0", "boot-foo.jar");
+      final WorkspaceIndex index = new WorkspaceIndex(toMap(boot), Collections.<MavenProject> emptyList(), null);
+      assertEquals(boot.getArtifact().getFile(),
+         index.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:foo:jar:1.0")));
+      assertNull(index.findArtifact(new org.eclipse.aether.artifact.DefaultArtifact("org.example:bar:jar:1.0")));
+      assertEquals(1, index.getHits());
+      assertEquals(1, index.getMisses());
+   }
+
+   private static Map<String, MavenProject> toMap(MavenProject... projects) {
+      final Map<String, MavenProject> projectMap = new HashMap<String, MavenProject>();
+      for (MavenProject project : projects) {
+         projectMap.put(ArtifactUtils.key(project.getGroupId(), project.getArtifactId(), project.getVersion()),
+            project);
+      }
+      return projectMap;
+   }
+
+   private MavenProject newProject(String artifactId, String version, String fileName) throws IOException {
+      final Model model = new Model();
+      model.setGroupId("org.example");
+      model.setArtifactId(artifactId);
+      model.setVersion(version);
+      final MavenProject project = new MavenProject(model);
+      final DefaultArtifact artifact = new DefaultArtifact("org.example", artifactId, version, null, "jar", null,
+         new DefaultArtifactHandler("jar"));
+      final File file = new File(ws.getRoot(), fileName);
+      FileUtils.fileWrite(file, "UTF-8", fileName);
+      artifact.setFile(file);
+      project.setArtifact(artifact);
+      return project;
+   }
+}
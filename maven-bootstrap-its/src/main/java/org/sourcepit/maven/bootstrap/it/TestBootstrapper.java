@@ -27,8 +27,6 @@ import javax.inject.Named;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.project.MavenProject;
-import org.sourcepit.common.utils.file.FileUtils;
-import org.sourcepit.common.utils.file.FileVisitor;
 import org.sourcepit.common.utils.path.PathUtils;
 import org.sourcepit.maven.bootstrap.core.AbstractBootstrapper;
 import org.sourcepit.maven.exec.intercept.MavenExecutionParticipant;
@@ -60,24 +58,12 @@ public class TestBootstrapper extends AbstractBootstrapper implements MavenExecu
    }
 
    @Override
-   protected void discoverProjectDescriptors(MavenSession session, final Collection<File> descriptors,
+   protected void discoverProjectDescriptors(MavenSession session, Collection<File> descriptors,
       Collection<File> skippedDescriptors) {
       report.println("discoverProjectDescriptors");
 
       final File baseDir = new File(session.getRequest().getBaseDirectory());
-      FileUtils.accept(baseDir, new FileVisitor() {
-         public boolean visit(File file) {
-            final String fileName = file.getName();
-            if (file.isDirectory() && !"target".equals(fileName)) {
-               final File pomFile = new File(file, "pom.xml");
-               if (pomFile.exists()) {
-                  descriptors.add(pomFile);
-                  return true;
-               }
-            }
-            return false;
-         }
-      });
+      scanProjectDescriptors(session, baseDir, descriptors);
 
       final List<String> paths = new ArrayList<String>();
       for (File file : descriptors) {
@@ -96,4 +82,47 @@ public class TestBootstrapper extends AbstractBootstrapper implements MavenExecu
       return Boolean.valueOf(properties.getProperty("allowExtensions", "false")).booleanValue();
    }
 
+   @Override
+   protected int getBootThreads(MavenSession bootSession) {
+      return Integer.parseInt(getProperty(bootSession, "bootThreads", "1"));
+   }
+
+   @Override
+   protected int getResolutionThreads(MavenSession bootSession) {
+      return Integer.parseInt(getProperty(bootSession, "resolutionThreads", "0"));
+   }
+
+   @Override
+   protected boolean isLazyDependencyResolution(MavenSession bootSession) {
+      return Boolean.valueOf(getProperty(bootSession, "lazyResolution", "false")).booleanValue();
+   }
+
+   @Override
+   protected int getPrefetchWindow(MavenSession bootSession) {
+      return Integer.parseInt(getProperty(bootSession, "prefetchWindow", "0"));
+   }
+
+   @Override
+   protected File getLockFile(MavenSession bootSession) {
+      final String lockFile = getProperty(bootSession, "lockFile", null);
+      return lockFile == null ? null : new File(bootSession.getRequest().getBaseDirectory(), lockFile);
+   }
+
+   @Override
+   protected boolean isUpdateLockFile(MavenSession bootSession) {
+      return Boolean.valueOf(getProperty(bootSession, "updateLockFile", "false")).booleanValue();
+   }
+
+   @Override
+   protected boolean isUseWorkspaceIndex(MavenSession bootSession) {
+      return Boolean.valueOf(getProperty(bootSession, "workspaceIndex", "false")).booleanValue();
+   }
+
+   private static String getProperty(MavenSession session, String key, String defaultValue) {
+      final Properties properties = new Properties();
+      properties.putAll(session.getSystemProperties());
+      properties.putAll(session.getUserProperties());
+      return properties.getProperty(key, defaultValue);
+   }
+
 }
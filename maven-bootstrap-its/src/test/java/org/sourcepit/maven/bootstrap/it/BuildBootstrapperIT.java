@@ -21,6 +21,7 @@ import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -103,6 +104,69 @@ public class BuildBootstrapperIT extends ExternalMavenTest {
       assertThat(it.next(), equalTo("afterBuild,org.sourcepit.it,module-project-a"));
    }
 
+   @Test
+   public void testParallelBoot() throws Exception {
+      final File projectDir = getResource("reactor-project");
+
+      final int error = build(projectDir, "-e", "-B", "compile", "-DbootThreads=2");
+      assertThat(error, is(0));
+
+      // the test participant isn't thread safe, so it must still be invoked in reactor order
+      assertReactorParticipantReport(projectDir);
+   }
+
+   @Test
+   public void testParallelResolution() throws Exception {
+      final File projectDir = getResource("reactor-project");
+
+      final int error = build(projectDir, "-e", "-B", "compile", "-DresolutionThreads=2");
+      assertThat(error, is(0));
+
+      assertReactorParticipantReport(projectDir);
+   }
+
+   @Test
+   public void testLazyResolution() throws Exception {
+      final File projectDir = getResource("reactor-project");
+
+      final int error = build(projectDir, "-e", "-B", "compile", "-DlazyResolution=true");
+      assertThat(error, is(0));
+
+      assertReactorParticipantReport(projectDir);
+   }
+
+   @Test
+   public void testPrefetch() throws Exception {
+      final File projectDir = getResource("reactor-project");
+
+      final int error = build(projectDir, "-e", "-B", "compile", "-DprefetchWindow=1");
+      assertThat(error, is(0));
+
+      assertReactorParticipantReport(projectDir);
+   }
+
+   @Test
+   public void testWorkspaceIndex() throws Exception {
+      final File projectDir = getResource("reactor-project");
+
+      final int error = build(projectDir, "-e", "-B", "compile", "-DworkspaceIndex=true");
+      assertThat(error, is(0));
+
+      assertReactorParticipantReport(projectDir);
+   }
+
+   private static void assertReactorParticipantReport(File projectDir) {
+      Report participantReport = new Report(new File(projectDir, TestBootstrapParticipant.class.getName() + ".txt"));
+      List<String> lines = participantReport.readLines();
+      assertThat(lines.size(), is(4));
+
+      Iterator<String> it = lines.iterator();
+      assertThat(it.next(), equalTo("beforeBuild,org.sourcepit.it,module-project-b"));
+      assertThat(it.next(), equalTo("beforeBuild,org.sourcepit.it,module-project-a"));
+      assertThat(it.next(), equalTo("afterBuild,org.sourcepit.it,module-project-b"));
+      assertThat(it.next(), equalTo("afterBuild,org.sourcepit.it,module-project-a"));
+   }
+
    @Test
    public void testExtensionExtension() throws Exception {
       final File projectDir = getResource("extension-extensions");
@@ -128,4 +192,32 @@ public class BuildBootstrapperIT extends ExternalMavenTest {
       assertThat(it.next(), equalTo(TestExtensionExtension.class.getName()));
       assertThat(it.next(), equalTo("afterBuild,org.sourcepit.it,extension-extensions"));
    }
+
+   @Test
+   public void testLockFile() throws Exception {
+      final File projectDir = getResource("extension-extensions");
+
+      int error = build(projectDir, "-e", "-B", "compile", "-DallowExtensions=true", "-DlockFile=bootstrap.lock",
+         "-DupdateLockFile=true");
+      assertThat(error, is(0));
+
+      final File lockFile = new File(projectDir, "bootstrap.lock");
+      final List<String> sections = new ArrayList<String>();
+      for (String line : new Report(lockFile).readLines()) {
+         if (line.startsWith("[")) {
+            sections.add(line);
+         }
+      }
+      assertThat(sections.size(), is(1));
+      assertThat(sections.get(0).startsWith("[org.sourcepit.tools:maven-bootstrap-its:test-jar:"), is(true));
+
+      // the locked classpath is used as is
+      error = build(projectDir, "-e", "-B", "compile", "-DallowExtensions=true", "-DlockFile=bootstrap.lock");
+      assertThat(error, is(0));
+
+      Report participantReport = new Report(new File(projectDir, TestBootstrapParticipant.class.getName() + ".txt"));
+      List<String> lines = participantReport.readLines();
+      assertThat(lines.size(), is(6));
+      assertThat(lines.get(4), equalTo(TestExtensionExtension.class.getName()));
+   }
 }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2014 Bernd Vogt and others.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sourcepit.maven.bootstrap.participation;
+
+/**
+ * Optional interface for {@link BootstrapParticipant}s and {@link BootstrapParticipant2}s which declare the dependency
+ * resolution scope they need. Only used if the bootstrapper resolves dependencies lazily.
+ */
+public interface DependencyResolutionAwareBootstrapParticipant {
+   /**
+    * Returns the scope the dependencies of the boot project must be resolved in before this participant is invoked,
+    * e.g. <code>compile</code> or <code>test</code>, or <code>null</code> if the participant doesn't access the
+    * artifacts of the boot project.
+    */
+   String getDependencyResolutionRequired();
+}